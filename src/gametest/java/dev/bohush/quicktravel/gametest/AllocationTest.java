@@ -0,0 +1,161 @@
+package dev.bohush.quicktravel.gametest;
+
+import com.mojang.authlib.GameProfile;
+import com.sun.management.ThreadMXBean;
+import dev.bohush.quicktravel.util.AnchorIndex;
+import dev.bohush.quicktravel.util.AnchorZoneTracker;
+import dev.bohush.quicktravel.util.TeleportUtil;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.fabricmc.fabric.api.gametest.v1.FabricGameTest;
+import net.minecraft.block.BedBlock;
+import net.minecraft.block.Blocks;
+import net.minecraft.block.enums.BedPart;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.test.GameTest;
+import net.minecraft.test.GameTestException;
+import net.minecraft.test.TestContext;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.Direction;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.UUID;
+
+/**
+ * Checks that answering whether a player can teleport allocates nothing once the player's zone is tracked,
+ * by counting the bytes allocated by the server thread.
+ */
+public class AllocationTest implements FabricGameTest {
+    private static final int WARMUP_ITERATIONS = 50_000;
+    private static final int ITERATIONS = 100_000;
+    // Less than the smallest object, so allocating anything on every call fails the test
+    private static final long MAX_BYTES_PER_CALL = 8;
+    // Far enough from the world spawn that the bed loop is reached
+    private static final int SPAWN_OFFSET = 64;
+
+    // Own batch, so it never runs next to LoadTest, which rebuilds AnchorIndex and changes ModConfig
+    @GameTest(structureName = EMPTY_STRUCTURE, tickLimit = 20 * 60, batchId = "allocation")
+    public void eligibilityCheck(TestContext context) {
+        var check = new Check(context.getWorld());
+
+        context.runAtEveryTick(check::tick);
+        context.addFinalTask(check::assertPassed);
+    }
+
+    private static class Check {
+        private final ServerWorld world;
+        @Nullable
+        private ServerPlayerEntity player;
+        private BlockPos bedFoot;
+        private BlockPos bedHead;
+        private ChunkPos bedChunk;
+        private boolean measured;
+        private final ArrayList<String> failures = new ArrayList<>();
+
+        private Check(ServerWorld world) {
+            this.world = world;
+        }
+
+        private void tick() {
+            if (player == null) {
+                connectPlayer();
+                return;
+            }
+
+            if (measured || !AnchorIndex.isReady()) {
+                return;
+            }
+
+            var player = this.player;
+            var dimension = world.getRegistryKey();
+            var from = player.getPos();
+            var buffer = new LongArrayList();
+
+            try {
+                measure("AnchorZoneTracker.getCandidates", () -> AnchorZoneTracker.getCandidates(player));
+                measure("AnchorIndex.getNearby", () -> {
+                    buffer.clear();
+                    AnchorIndex.getNearby(dimension, from, buffer);
+                });
+                measure("TeleportUtil.canTeleport", () -> {
+                    if (!TeleportUtil.canTeleport(world, player)) {
+                        throw new GameTestException("The player next to their bed cannot teleport");
+                    }
+                });
+            } finally {
+                measured = true;
+                cleanUp();
+            }
+        }
+
+        /**
+         * Disconnects the player and removes the bed, which is outside the test structure and would be left in the world.
+         */
+        private void cleanUp() {
+            world.getServer().getPlayerManager().remove(player);
+            world.setBlockState(bedHead, Blocks.AIR.getDefaultState());
+            world.setBlockState(bedFoot, Blocks.AIR.getDefaultState());
+            world.setChunkForced(bedChunk.x, bedChunk.z, false);
+        }
+
+        private void assertPassed() {
+            if (!measured) {
+                throw new GameTestException("Spawn points are still loading");
+            }
+            if (!failures.isEmpty()) {
+                throw new GameTestException(String.join(", ", failures));
+            }
+        }
+
+        /**
+         * Connects a fake player standing next to their bed, away from the world spawn.
+         */
+        private void connectPlayer() {
+            var server = world.getServer();
+            var spawnPos = world.getSpawnPos();
+            var foot = new BlockPos(spawnPos.getX() + SPAWN_OFFSET, world.getTopY() - 16, spawnPos.getZ() + SPAWN_OFFSET);
+            var head = foot.offset(Direction.EAST);
+            bedFoot = foot;
+            bedHead = head;
+
+            // Loaded chunks are checked on the server thread, unloaded ones would be read from the region file
+            bedChunk = new ChunkPos(foot);
+            world.setChunkForced(bedChunk.x, bedChunk.z, true);
+
+            var bed = Blocks.RED_BED.getDefaultState().with(BedBlock.FACING, Direction.EAST);
+            world.setBlockState(foot, bed.with(BedBlock.PART, BedPart.FOOT));
+            world.setBlockState(head, bed.with(BedBlock.PART, BedPart.HEAD));
+
+            var name = "AllocationTest";
+            var uuid = UUID.nameUUIDFromBytes(("AllocationTest:" + name).getBytes(StandardCharsets.UTF_8));
+            player = new ServerPlayerEntity(server, world, new GameProfile(uuid, name));
+            server.getPlayerManager().onPlayerConnect(new FakeClientConnection(), player);
+            player.setSpawnPoint(world.getRegistryKey(), head, 0, false, false);
+            player.teleport(world, foot.getX() + 0.5, foot.getY(), foot.getZ() - 0.5, 0, 0);
+        }
+
+        private void measure(String name, Runnable call) {
+            var threads = (ThreadMXBean)ManagementFactory.getThreadMXBean();
+            var threadId = Thread.currentThread().getId();
+
+            // Lets the JIT compile the calls first, escape analysis removes short-lived objects only in compiled code
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                call.run();
+            }
+
+            var before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < ITERATIONS; i++) {
+                call.run();
+            }
+            var bytesPerCall = (threads.getThreadAllocatedBytes(threadId) - before) / ITERATIONS;
+
+            if (bytesPerCall > MAX_BYTES_PER_CALL) {
+                failures.add(name + " allocates " + bytesPerCall + " bytes per call");
+            }
+        }
+    }
+}
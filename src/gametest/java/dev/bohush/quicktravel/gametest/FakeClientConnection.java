@@ -0,0 +1,25 @@
+package dev.bohush.quicktravel.gametest;
+
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
+import net.minecraft.network.ClientConnection;
+import net.minecraft.network.NetworkSide;
+import net.minecraft.network.Packet;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Connection of a fake player, every packet sent to it is dropped.
+ */
+public class FakeClientConnection extends ClientConnection {
+    public FakeClientConnection() {
+        super(NetworkSide.SERVERBOUND);
+    }
+
+    @Override
+    public void send(Packet<?> packet) {
+    }
+
+    @Override
+    public void send(Packet<?> packet, @Nullable GenericFutureListener<? extends Future<? super Void>> callback) {
+    }
+}
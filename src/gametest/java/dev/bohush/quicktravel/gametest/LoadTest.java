@@ -0,0 +1,31 @@
+package dev.bohush.quicktravel.gametest;
+
+import net.fabricmc.fabric.api.gametest.v1.FabricGameTest;
+import net.minecraft.test.GameTest;
+import net.minecraft.test.GameTestException;
+import net.minecraft.test.TestContext;
+import net.minecraft.util.math.BlockPos;
+
+/**
+ * Drives the teleport commands with fake players on a headless server and writes a report of the tick times.
+ * Run with {@code gradlew runGametest}, see {@link LoadTestConfig} for the settings.
+ */
+public class LoadTest implements FabricGameTest {
+    /**
+     * Upper bound of the whole run, the configured phases have to fit in it.
+     */
+    private static final int TICK_LIMIT = 20 * 60 * 30;
+
+    // Own batch, it clears AnchorIndex and changes ModConfig while running
+    @GameTest(structureName = EMPTY_STRUCTURE, tickLimit = TICK_LIMIT, batchId = "load")
+    public void teleportCommands(TestContext context) {
+        var harness = new LoadTestHarness(context.getWorld(), context.getAbsolutePos(BlockPos.ORIGIN), LoadTestConfig.fromSystemProperties());
+
+        context.runAtEveryTick(harness::tick);
+        context.addFinalTask(() -> {
+            if (!harness.isDone()) {
+                throw new GameTestException("Load test is still running");
+            }
+        });
+    }
+}
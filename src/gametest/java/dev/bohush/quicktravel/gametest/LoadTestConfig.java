@@ -0,0 +1,82 @@
+package dev.bohush.quicktravel.gametest;
+
+/**
+ * Settings of the load test, read from {@code quicktravel.loadtest.*} system properties.
+ * With Gradle they are passed as project properties, e.g. {@code gradlew runGametest -Ploadtest.players=500}.
+ */
+public class LoadTestConfig {
+    private static final String PREFIX = "quicktravel.loadtest.";
+
+    /**
+     * Online fake players, each with a bed near the test area.
+     */
+    public final int players;
+
+    /**
+     * Synthetic player data files of offline players, scattered around the world.
+     */
+    public final int savedPlayers;
+
+    /**
+     * Ticks measured before any command is issued.
+     */
+    public final int baselineTicks;
+
+    /**
+     * Ticks measured while the commands are issued.
+     */
+    public final int loadTicks;
+
+    public final double homePerTick;
+    public final double spawnPerTick;
+    public final double requestPerTick;
+
+    /**
+     * How long the target waits before accepting a request.
+     */
+    public final int acceptDelayTicks;
+
+    /**
+     * Every player sends a request in the first load tick, like at the start of an event.
+     */
+    public final boolean burst;
+
+    /**
+     * Admission control limits applied for the run, see {@link dev.bohush.quicktravel.config.ModConfig}.
+     * By default every command is admitted, so the run measures the full cost of the commands.
+     */
+    public final int commandBurst;
+    public final int commandRefillTicks;
+    public final int maxChecksPerTick;
+
+    public final String reportFile;
+
+    private LoadTestConfig() {
+        players = getInt("players", 200);
+        savedPlayers = getInt("savedPlayers", 5000);
+        baselineTicks = getInt("baselineTicks", 200);
+        loadTicks = getInt("loadTicks", 1200);
+        homePerTick = getDouble("homePerTick", 1);
+        spawnPerTick = getDouble("spawnPerTick", 0.5);
+        requestPerTick = getDouble("requestPerTick", 2);
+        acceptDelayTicks = getInt("acceptDelayTicks", 20);
+        burst = Boolean.parseBoolean(System.getProperty(PREFIX + "burst", "true"));
+        commandBurst = getInt("commandBurst", 3);
+        commandRefillTicks = getInt("commandRefillTicks", 0);
+        maxChecksPerTick = getInt("maxChecksPerTick", 0);
+        reportFile = System.getProperty(PREFIX + "reportFile", "quick-travel-load-report.json");
+    }
+
+    public static LoadTestConfig fromSystemProperties() {
+        return new LoadTestConfig();
+    }
+
+    private static int getInt(String key, int defaultValue) {
+        return Integer.getInteger(PREFIX + key, defaultValue);
+    }
+
+    private static double getDouble(String key, double defaultValue) {
+        var value = System.getProperty(PREFIX + key);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+}
@@ -0,0 +1,465 @@
+package dev.bohush.quicktravel.gametest;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.mojang.authlib.GameProfile;
+import dev.bohush.quicktravel.config.ModConfig;
+import dev.bohush.quicktravel.mixin.MinecraftServerAccessor;
+import dev.bohush.quicktravel.mixin.WorldSaveHandlerAccessor;
+import dev.bohush.quicktravel.util.AnchorIndex;
+import dev.bohush.quicktravel.util.Metrics;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerChunkEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.minecraft.SharedConstants;
+import net.minecraft.block.BedBlock;
+import net.minecraft.block.Blocks;
+import net.minecraft.block.enums.BedPart;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+import net.minecraft.world.World;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs one load test: sets up the players, measures idle ticks, measures ticks with the commands and writes the report.
+ * Must only be used from the server thread.
+ */
+public class LoadTestHarness {
+    private static final int BEDS_PER_ROW = 20;
+    private static final int BED_SPACING = 4;
+    private static final int SAVED_SPAWN_RANGE = 10_000;
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    @Nullable
+    private static LoadTestHarness current;
+    private static long tickStart;
+
+    static {
+        ServerTickEvents.START_SERVER_TICK.register(server -> tickStart = System.nanoTime());
+        ServerTickEvents.END_SERVER_TICK.register(server -> {
+            if (current != null) {
+                current.recordTick(System.nanoTime() - tickStart);
+            }
+        });
+        ServerChunkEvents.CHUNK_LOAD.register((world, chunk) -> {
+            if (current != null && current.phase != null) {
+                current.phase.chunkLoads++;
+            }
+        });
+    }
+
+    private final ServerWorld world;
+    private final BlockPos origin;
+    private final LoadTestConfig config;
+    private final Random random = new Random(0);
+
+    private final ArrayList<ServerPlayerEntity> players = new ArrayList<>();
+    private final ArrayList<File> savedPlayerFiles = new ArrayList<>();
+    private final ArrayDeque<PendingAccept> pendingAccepts = new ArrayDeque<>();
+
+    private State state = State.SETUP;
+    private int stateTicks;
+    @Nullable
+    private Phase phase;
+    private Phase baseline;
+    private Phase load;
+
+    // Limits of the server, restored after the run
+    private int savedCommandBurst;
+    private int savedCommandRefillTicks;
+    private int savedMaxChecksPerTick;
+
+    private double homeBudget;
+    private double spawnBudget;
+    private double requestBudget;
+    private int nextPlayer;
+
+    public LoadTestHarness(ServerWorld world, BlockPos origin, LoadTestConfig config) {
+        this.world = world;
+        this.origin = origin;
+        this.config = config;
+    }
+
+    public boolean isDone() {
+        return state == State.DONE;
+    }
+
+    public void tick() {
+        stateTicks++;
+
+        switch (state) {
+            case SETUP -> {
+                current = this;
+                applyLimits();
+                writeSavedPlayers();
+                connectPlayers();
+                AnchorIndex.rebuild(world.getServer());
+                setState(State.LOADING);
+            }
+            case LOADING -> {
+                if (AnchorIndex.isReady()) {
+                    LOGGER.info("Load test: {} players online, {} saved, loaded in {} ticks", players.size(), savedPlayerFiles.size(), stateTicks);
+                    baseline = new Phase("baseline");
+                    phase = baseline;
+                    setState(State.BASELINE);
+                }
+            }
+            case BASELINE -> {
+                if (stateTicks >= config.baselineTicks) {
+                    baseline.finish();
+                    load = new Phase("load");
+                    phase = load;
+                    setState(State.LOAD);
+                }
+            }
+            case LOAD -> {
+                if (stateTicks > config.loadTicks) {
+                    load.finish();
+                    phase = null;
+                    finish();
+                    setState(State.DONE);
+                    return;
+                }
+
+                issueCommands();
+            }
+            case DONE -> {
+            }
+        }
+    }
+
+    private void setState(State state) {
+        this.state = state;
+        stateTicks = 0;
+    }
+
+    private void applyLimits() {
+        savedCommandBurst = ModConfig.commandBurst;
+        savedCommandRefillTicks = ModConfig.commandRefillTicks;
+        savedMaxChecksPerTick = ModConfig.maxChecksPerTick;
+
+        ModConfig.commandBurst = config.commandBurst;
+        ModConfig.commandRefillTicks = config.commandRefillTicks;
+        ModConfig.maxChecksPerTick = config.maxChecksPerTick;
+    }
+
+    private void restoreLimits() {
+        ModConfig.commandBurst = savedCommandBurst;
+        ModConfig.commandRefillTicks = savedCommandRefillTicks;
+        ModConfig.maxChecksPerTick = savedMaxChecksPerTick;
+    }
+
+    private void recordTick(long nanos) {
+        if (phase != null) {
+            phase.tickNanos.add(nanos);
+        }
+    }
+
+    private void writeSavedPlayers() {
+        var saveHandler = ((MinecraftServerAccessor)world.getServer()).getSaveHandler();
+        var playerDataDir = ((WorldSaveHandlerAccessor)saveHandler).getPlayerDataDir();
+
+        for (int i = 0; i < config.savedPlayers; i++) {
+            var file = new File(playerDataDir, UUID.randomUUID() + ".dat");
+            try {
+                NbtIo.writeCompressed(createSavedPlayer(), file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            savedPlayerFiles.add(file);
+        }
+    }
+
+    /**
+     * Player data of roughly the size of a real one, with a full inventory and a spawn point somewhere in the world.
+     */
+    private NbtCompound createSavedPlayer() {
+        var nbt = new NbtCompound();
+        nbt.putInt("DataVersion", SharedConstants.getGameVersion().getWorldVersion());
+        nbt.putString("Dimension", World.OVERWORLD.getValue().toString());
+        nbt.putFloat("Health", 20);
+
+        var inventory = new NbtList();
+        for (int slot = 0; slot < 36; slot++) {
+            var item = new NbtCompound();
+            item.putByte("Slot", (byte)slot);
+            item.putString("id", "minecraft:cobblestone");
+            item.putByte("Count", (byte)64);
+            inventory.add(item);
+        }
+        nbt.put("Inventory", inventory);
+
+        nbt.putInt("SpawnX", origin.getX() + random.nextInt(2 * SAVED_SPAWN_RANGE) - SAVED_SPAWN_RANGE);
+        nbt.putInt("SpawnY", origin.getY());
+        nbt.putInt("SpawnZ", origin.getZ() + random.nextInt(2 * SAVED_SPAWN_RANGE) - SAVED_SPAWN_RANGE);
+        nbt.putString("SpawnDimension", World.OVERWORLD.getValue().toString());
+
+        return nbt;
+    }
+
+    /**
+     * Connects the fake players and gives each of them a bed in a grid next to the test structure.
+     */
+    private void connectPlayers() {
+        var server = world.getServer();
+
+        // Beds need a floor for the wake-up position
+        var rows = (config.players + BEDS_PER_ROW - 1) / BEDS_PER_ROW;
+        for (var pos : BlockPos.iterate(origin.add(-2, 0, -2), origin.add(BEDS_PER_ROW * BED_SPACING + 2, 0, rows * BED_SPACING + 2))) {
+            world.setBlockState(pos, Blocks.STONE.getDefaultState());
+        }
+
+        for (int i = 0; i < config.players; i++) {
+            var name = "LoadTest" + i;
+            var uuid = UUID.nameUUIDFromBytes(("LoadTest:" + name).getBytes(StandardCharsets.UTF_8));
+            var player = new ServerPlayerEntity(server, world, new GameProfile(uuid, name));
+            server.getPlayerManager().onPlayerConnect(new FakeClientConnection(), player);
+
+            var foot = origin.add((i % BEDS_PER_ROW) * BED_SPACING, 1, (i / BEDS_PER_ROW) * BED_SPACING);
+            var head = foot.offset(Direction.EAST);
+            var bed = Blocks.RED_BED.getDefaultState().with(BedBlock.FACING, Direction.EAST);
+            world.setBlockState(foot, bed.with(BedBlock.PART, BedPart.FOOT));
+            world.setBlockState(head, bed.with(BedBlock.PART, BedPart.HEAD));
+
+            player.setSpawnPoint(World.OVERWORLD, head, 0, false, false);
+            player.teleport(world, foot.getX() + 0.5, foot.getY(), foot.getZ() - 0.5, 0, 0);
+            players.add(player);
+        }
+    }
+
+    private void issueCommands() {
+        if (players.isEmpty()) {
+            return;
+        }
+
+        if (config.burst && stateTicks == 1) {
+            for (int i = 0; i < players.size(); i++) {
+                requestTeleport(i);
+            }
+        }
+
+        homeBudget += config.homePerTick;
+        for (; homeBudget >= 1; homeBudget--) {
+            execute(nextPlayer(), "home");
+        }
+
+        spawnBudget += config.spawnPerTick;
+        for (; spawnBudget >= 1; spawnBudget--) {
+            execute(nextPlayer(), "spawn");
+        }
+
+        requestBudget += config.requestPerTick;
+        for (; requestBudget >= 1; requestBudget--) {
+            requestTeleport(nextPlayerIndex());
+        }
+
+        while (!pendingAccepts.isEmpty() && pendingAccepts.peek().tick <= stateTicks) {
+            var accept = pendingAccepts.poll();
+            execute(accept.target, "tpaccept " + accept.requester.getEntityName());
+        }
+    }
+
+    private void requestTeleport(int requesterIndex) {
+        var requester = players.get(requesterIndex);
+        var target = players.get((requesterIndex + 1) % players.size());
+        if (requester == target) {
+            return;
+        }
+
+        execute(requester, "tpa " + target.getEntityName());
+        pendingAccepts.add(new PendingAccept(stateTicks + config.acceptDelayTicks, requester, target));
+    }
+
+    private void execute(ServerPlayerEntity player, String command) {
+        // The player may have been replaced by a respawn
+        var currentPlayer = world.getServer().getPlayerManager().getPlayer(player.getUuid());
+        if (currentPlayer != null) {
+            // Commands that fail right away, e.g. when admission control rejects them, return 0
+            var result = world.getServer().getCommandManager().execute(currentPlayer.getCommandSource(), command);
+            load.commands++;
+            if (result == 0) {
+                load.failedCommands++;
+            }
+        }
+    }
+
+    private ServerPlayerEntity nextPlayer() {
+        return players.get(nextPlayerIndex());
+    }
+
+    private int nextPlayerIndex() {
+        nextPlayer = (nextPlayer + 1) % players.size();
+        return nextPlayer;
+    }
+
+    private void finish() {
+        current = null;
+        restoreLimits();
+        writeReport();
+
+        for (var player : players) {
+            var currentPlayer = world.getServer().getPlayerManager().getPlayer(player.getUuid());
+            if (currentPlayer != null) {
+                world.getServer().getPlayerManager().remove(currentPlayer);
+            }
+        }
+
+        for (var file : savedPlayerFiles) {
+            if (!file.delete()) {
+                LOGGER.warn("Failed to delete {}", file);
+            }
+        }
+    }
+
+    private void writeReport() {
+        var report = new JsonObject();
+
+        var settings = new JsonObject();
+        settings.addProperty("players", config.players);
+        settings.addProperty("savedPlayers", config.savedPlayers);
+        settings.addProperty("baselineTicks", config.baselineTicks);
+        settings.addProperty("loadTicks", config.loadTicks);
+        settings.addProperty("homePerTick", config.homePerTick);
+        settings.addProperty("spawnPerTick", config.spawnPerTick);
+        settings.addProperty("requestPerTick", config.requestPerTick);
+        settings.addProperty("acceptDelayTicks", config.acceptDelayTicks);
+        settings.addProperty("burst", config.burst);
+        settings.addProperty("commandBurst", config.commandBurst);
+        settings.addProperty("commandRefillTicks", config.commandRefillTicks);
+        settings.addProperty("maxChecksPerTick", config.maxChecksPerTick);
+        report.add("settings", settings);
+
+        report.add(baseline.name, baseline.toJson());
+        report.add(load.name, load.toJson());
+
+        var metrics = new JsonArray();
+        Metrics.summarize().forEach(metrics::add);
+        report.add("metrics", metrics);
+
+        var path = Path.of(config.reportFile).toAbsolutePath();
+        try {
+            Files.writeString(path, new GsonBuilder().setPrettyPrinting().create().toJson(report));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        LOGGER.info("Load test report written to {}", path);
+    }
+
+    private enum State {
+        SETUP,
+        LOADING,
+        BASELINE,
+        LOAD,
+        DONE
+    }
+
+    private static class PendingAccept {
+        private final int tick;
+        private final ServerPlayerEntity requester;
+        private final ServerPlayerEntity target;
+
+        private PendingAccept(int tick, ServerPlayerEntity requester, ServerPlayerEntity target) {
+            this.tick = tick;
+            this.requester = requester;
+            this.target = target;
+        }
+    }
+
+    /**
+     * Tick times, commands, chunk loads and garbage collections of one part of the run.
+     */
+    private static class Phase {
+        private final String name;
+        private final LongArrayList tickNanos = new LongArrayList();
+        private final long startGcCount = getGcCount();
+        private final long startGcMillis = getGcMillis();
+        private final long startRejected = Metrics.THROTTLED.get();
+        private int chunkLoads;
+        private int commands;
+        private int failedCommands;
+        private long rejectedCommands;
+        private long gcCount;
+        private long gcMillis;
+
+        private Phase(String name) {
+            this.name = name;
+        }
+
+        private void finish() {
+            rejectedCommands = Metrics.THROTTLED.get() - startRejected;
+            gcCount = getGcCount() - startGcCount;
+            gcMillis = getGcMillis() - startGcMillis;
+        }
+
+        private JsonObject toJson() {
+            var sorted = tickNanos.toLongArray();
+            Arrays.sort(sorted);
+
+            var json = new JsonObject();
+            json.addProperty("ticks", sorted.length);
+            json.addProperty("commands", commands);
+            json.addProperty("rejectedCommands", rejectedCommands);
+            json.addProperty("failedCommands", failedCommands);
+            json.addProperty("msptMean", toMillis((long)Arrays.stream(sorted).average().orElse(0)));
+            json.addProperty("msptP50", toMillis(getPercentile(sorted, 0.5)));
+            json.addProperty("msptP90", toMillis(getPercentile(sorted, 0.9)));
+            json.addProperty("msptP99", toMillis(getPercentile(sorted, 0.99)));
+            json.addProperty("msptMax", toMillis(sorted.length == 0 ? 0 : sorted[sorted.length - 1]));
+            json.addProperty("ticksOver50ms", Arrays.stream(sorted).filter(nanos -> nanos > TimeUnit.MILLISECONDS.toNanos(50)).count());
+            json.addProperty("chunkLoads", chunkLoads);
+            json.addProperty("gcCount", gcCount);
+            json.addProperty("gcMillis", gcMillis);
+            return json;
+        }
+
+        private static long getPercentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            return sorted[Math.min(sorted.length - 1, (int)Math.ceil(sorted.length * percentile) - 1)];
+        }
+
+        private static double toMillis(long nanos) {
+            return nanos / (double)TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        private static long getGcCount() {
+            return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount)
+                .filter(count -> count > 0)
+                .sum();
+        }
+
+        private static long getGcMillis() {
+            return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+                .filter(time -> time > 0)
+                .sum();
+        }
+    }
+}
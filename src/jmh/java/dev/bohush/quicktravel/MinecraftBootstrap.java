@@ -0,0 +1,21 @@
+package dev.bohush.quicktravel;
+
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+
+/**
+ * Initializes game registries so benchmarks can use vanilla classes without a server or client.
+ */
+public class MinecraftBootstrap {
+    private static boolean initialized;
+
+    public static synchronized void initialize() {
+        if (initialized) {
+            return;
+        }
+
+        SharedConstants.createGameVersion();
+        Bootstrap.initialize();
+        initialized = true;
+    }
+}
@@ -0,0 +1,34 @@
+package dev.bohush.quicktravel.command;
+
+import dev.bohush.quicktravel.MinecraftBootstrap;
+import net.minecraft.text.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building the clickable message that {@code /tpa} sends to the target.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RequestMessageBenchmark {
+    private String requesterName;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        MinecraftBootstrap.initialize();
+        requesterName = "Requester";
+    }
+
+    @Benchmark
+    public Text createRequestMessage() {
+        return TeleportRequestCommand.createRequestMessage(requesterName);
+    }
+}
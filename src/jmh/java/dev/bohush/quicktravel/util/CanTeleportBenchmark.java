@@ -0,0 +1,122 @@
+package dev.bohush.quicktravel.util;
+
+import dev.bohush.quicktravel.MinecraftBootstrap;
+import it.unimi.dsi.fastutil.longs.Long2BooleanOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.World;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * {@link TeleportUtil#canTeleport} without a tracked zone: {@link AnchorIndex#getNearby} into a reused buffer
+ * and the bed check of every candidate in reach, versus the previous scan over every player.
+ * {@link BedCache} needs a loaded world, so its warm answers are stood in for by a map of the same kind.
+ * The index path is expected to allocate nothing, {@code gc.alloc.rate.norm} of the gc profiler should stay at 0.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CanTeleportBenchmark {
+    private static final int WORLD_SIZE = 10_000;
+    private static final int QUERY_COUNT = 1024;
+
+    @Param({"10", "1000", "50000"})
+    public int savedPlayers;
+
+    private final LinkedHashMap<String, BlockPos> spawnPoints = new LinkedHashMap<>();
+    private final Long2BooleanOpenHashMap beds = new Long2BooleanOpenHashMap();
+    private final LongArrayList nearbyBuffer = new LongArrayList();
+    private final Vec3d[] queries = new Vec3d[QUERY_COUNT];
+    private final BlockPos worldSpawn = BlockPos.ORIGIN;
+    private int nextQuery;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        MinecraftBootstrap.initialize();
+
+        var random = new Random(42);
+        AnchorIndex.clear();
+        spawnPoints.clear();
+        beds.clear();
+
+        for (int i = 0; i < savedPlayers; i++) {
+            var playerUuid = new UUID(random.nextLong(), random.nextLong());
+            var spawnPos = new BlockPos(random.nextInt(WORLD_SIZE * 2) - WORLD_SIZE, 64, random.nextInt(WORLD_SIZE * 2) - WORLD_SIZE);
+            spawnPoints.put(playerUuid.toString(), spawnPos);
+            AnchorIndex.update(playerUuid, World.OVERWORLD, spawnPos);
+            beds.put(spawnPos.asLong(), isBed(spawnPos));
+        }
+
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            queries[i] = new Vec3d(random.nextInt(WORLD_SIZE * 2) - WORLD_SIZE, 64, random.nextInt(WORLD_SIZE * 2) - WORLD_SIZE);
+        }
+    }
+
+    @Benchmark
+    public boolean anchorIndex() {
+        var from = nextQuery();
+        if (TeleportUtil.isNearby(from, worldSpawn)) {
+            return true;
+        }
+
+        nearbyBuffer.clear();
+        AnchorIndex.getNearby(World.OVERWORLD, from, nearbyBuffer);
+        for (int i = 0; i < nearbyBuffer.size(); i++) {
+            var spawnPos = nearbyBuffer.getLong(i);
+            if (TeleportUtil.isNearby(from.getX(), from.getY(), from.getZ(), spawnPos) && beds.get(spawnPos)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * What canTeleport used to do, minus reading the player files.
+     */
+    @Benchmark
+    public boolean linearScan() {
+        var from = nextQuery();
+        if (TeleportUtil.isNearby(from, worldSpawn)) {
+            return true;
+        }
+
+        var checkedPlayers = new HashSet<String>();
+        for (var entry : spawnPoints.entrySet()) {
+            if (checkedPlayers.contains(entry.getKey())) {
+                continue;
+            }
+            checkedPlayers.add(entry.getKey());
+
+            if (TeleportUtil.isNearby(from, entry.getValue()) && isBed(entry.getValue())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private Vec3d nextQuery() {
+        nextQuery = (nextQuery + 1) & (QUERY_COUNT - 1);
+        return queries[nextQuery];
+    }
+
+    private static boolean isBed(BlockPos pos) {
+        return (pos.getX() & 1) == 0;
+    }
+}
@@ -0,0 +1,152 @@
+package dev.bohush.quicktravel.util;
+
+import dev.bohush.quicktravel.MinecraftBootstrap;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtString;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.GlobalPos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Reading the spawn point of an offline player: full {@link NbtIo#readCompressed(File)} versus {@link SpawnNbtReader}.
+ * <p>
+ * The generated player file resembles a late-game player: full inventory and ender chest of enchanted,
+ * named shulker boxes, a large recipe book and plenty of attributes.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SavedPlayerReadBenchmark {
+    private File playerDataDir;
+    private String playerUuid;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        MinecraftBootstrap.initialize();
+
+        playerDataDir = Files.createTempDirectory("quick-travel-playerdata").toFile();
+        playerUuid = UUID.randomUUID().toString();
+        NbtIo.writeCompressed(createLateGamePlayer(new Random(42)), new File(playerDataDir, playerUuid + ".dat"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        new File(playerDataDir, playerUuid + ".dat").delete();
+        playerDataDir.delete();
+    }
+
+    @Benchmark
+    public BlockPos nbtIo() throws IOException {
+        var nbt = NbtIo.readCompressed(new File(playerDataDir, playerUuid + ".dat"));
+        if (!nbt.contains("SpawnX", NbtElement.NUMBER_TYPE)
+            || !nbt.contains("SpawnY", NbtElement.NUMBER_TYPE)
+            || !nbt.contains("SpawnZ", NbtElement.NUMBER_TYPE)) {
+            return null;
+        }
+
+        return new BlockPos(nbt.getInt("SpawnX"), nbt.getInt("SpawnY"), nbt.getInt("SpawnZ"));
+    }
+
+    @Benchmark
+    public GlobalPos spawnNbtReader() {
+        return TeleportUtil.getSpawnPointFromSavedPlayer(playerUuid, playerDataDir);
+    }
+
+    private static NbtCompound createLateGamePlayer(Random random) {
+        var nbt = new NbtCompound();
+        nbt.putInt("DataVersion", 2865);
+        nbt.putFloat("Health", 20);
+        nbt.putInt("XpLevel", 30 + random.nextInt(70));
+        nbt.put("Inventory", createItems(random, 41));
+        nbt.put("EnderItems", createItems(random, 27));
+
+        var attributes = new NbtList();
+        for (int i = 0; i < 16; i++) {
+            var attribute = new NbtCompound();
+            attribute.putString("Name", "minecraft:generic.attribute_" + i);
+            attribute.putDouble("Base", random.nextDouble());
+            attributes.add(attribute);
+        }
+        nbt.put("Attributes", attributes);
+
+        var recipes = new NbtList();
+        for (int i = 0; i < 1000; i++) {
+            recipes.add(NbtString.of("minecraft:recipe_" + i));
+        }
+        var recipeBook = new NbtCompound();
+        recipeBook.put("recipes", recipes);
+        recipeBook.put("toBeDisplayed", recipes.copy());
+        nbt.put("recipeBook", recipeBook);
+
+        // Vanilla writes spawn fields after most of the player data
+        nbt.putInt("SpawnX", random.nextInt(2000) - 1000);
+        nbt.putInt("SpawnY", 64);
+        nbt.putInt("SpawnZ", random.nextInt(2000) - 1000);
+        nbt.putString("SpawnDimension", "minecraft:overworld");
+
+        return nbt;
+    }
+
+    private static NbtList createItems(Random random, int count) {
+        var items = new NbtList();
+        for (int slot = 0; slot < count; slot++) {
+            var item = new NbtCompound();
+            item.putByte("Slot", (byte)slot);
+            item.putString("id", "minecraft:shulker_box");
+            item.putByte("Count", (byte)1);
+
+            var contents = new NbtList();
+            for (int i = 0; i < 27; i++) {
+                var content = new NbtCompound();
+                content.putByte("Slot", (byte)i);
+                content.putString("id", "minecraft:diamond_sword");
+                content.putByte("Count", (byte)1);
+
+                var enchantments = new NbtList();
+                for (int j = 0; j < 4; j++) {
+                    var enchantment = new NbtCompound();
+                    enchantment.putString("id", "minecraft:enchantment_" + j);
+                    enchantment.putShort("lvl", (short)(1 + random.nextInt(5)));
+                    enchantments.add(enchantment);
+                }
+
+                var tag = new NbtCompound();
+                tag.putInt("Damage", random.nextInt(1500));
+                tag.put("Enchantments", enchantments);
+                content.put("tag", tag);
+                contents.add(content);
+            }
+
+            var blockEntityTag = new NbtCompound();
+            blockEntityTag.put("Items", contents);
+            var display = new NbtCompound();
+            display.putString("Name", "{\"text\":\"Storage " + slot + "\"}");
+
+            var tag = new NbtCompound();
+            tag.put("BlockEntityTag", blockEntityTag);
+            tag.put("display", display);
+            item.put("tag", tag);
+            items.add(item);
+        }
+
+        return items;
+    }
+}
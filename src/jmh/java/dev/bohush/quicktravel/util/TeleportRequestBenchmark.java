@@ -0,0 +1,74 @@
+package dev.bohush.quicktravel.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Create, suggest and finish churn of {@link TeleportRequest} with many other requests pending.
+ * Requests are created by UUID, so no player entities or server are needed.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TeleportRequestBenchmark {
+    private static final int TARGET_COUNT = 50;
+
+    @Param({"10", "1000", "10000"})
+    public int pendingRequests;
+
+    private final UUID[] targets = new UUID[TARGET_COUNT];
+    private UUID[] requesters;
+    private UUID churnRequester;
+    private int nextTarget;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        for (int i = 0; i < TARGET_COUNT; i++) {
+            targets[i] = UUID.randomUUID();
+        }
+
+        requesters = new UUID[pendingRequests];
+        for (int i = 0; i < pendingRequests; i++) {
+            requesters[i] = UUID.randomUUID();
+            TeleportRequest.create(null, requesters[i], "Requester" + i, targets[i % TARGET_COUNT], "Target", () -> {});
+        }
+
+        churnRequester = UUID.randomUUID();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (var target : targets) {
+            TeleportRequest.finish(null, target);
+        }
+    }
+
+    @Benchmark
+    public void createSuggestFinish(Blackhole blackhole) {
+        nextTarget = (nextTarget + 1) % TARGET_COUNT;
+        var target = targets[nextTarget];
+
+        blackhole.consume(TeleportRequest.create(null, churnRequester, "Churn", target, "Target", () -> {}));
+        blackhole.consume(TeleportRequest.suggestPlayers(target));
+        blackhole.consume(TeleportRequest.finish(churnRequester, target));
+    }
+
+    @Benchmark
+    public List<String> suggest() {
+        nextTarget = (nextTarget + 1) % TARGET_COUNT;
+        return TeleportRequest.suggestPlayers(targets[nextTarget]);
+    }
+}
@@ -1,12 +1,16 @@
 package dev.bohush.quicktravel;
 
 import dev.bohush.quicktravel.command.ModCommands;
+import dev.bohush.quicktravel.config.ModConfig;
+import dev.bohush.quicktravel.event.ModEvents;
 import net.fabricmc.api.DedicatedServerModInitializer;
 
 
 public class QuickTravel implements DedicatedServerModInitializer {
     @Override
     public void onInitializeServer() {
+        ModConfig.load();
         ModCommands.registerCommands();
+        ModEvents.registerEvents();
     }
 }
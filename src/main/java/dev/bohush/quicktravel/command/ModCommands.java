@@ -7,5 +7,6 @@ public class ModCommands {
         CommandRegistrationCallback.EVENT.register(TeleportHomeCommand::register);
         CommandRegistrationCallback.EVENT.register(TeleportSpawnCommand::register);
         CommandRegistrationCallback.EVENT.register(TeleportRequestCommand::register);
+        CommandRegistrationCallback.EVENT.register(QuickTravelCommand::register);
     }
 }
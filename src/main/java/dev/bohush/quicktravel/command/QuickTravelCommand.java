@@ -0,0 +1,94 @@
+package dev.bohush.quicktravel.command;
+
+import com.mojang.brigadier.Command;
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.context.CommandContext;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import com.mojang.brigadier.exceptions.SimpleCommandExceptionType;
+import dev.bohush.quicktravel.config.ModConfig;
+import dev.bohush.quicktravel.util.HotDestinations;
+import dev.bohush.quicktravel.util.Metrics;
+import dev.bohush.quicktravel.util.TeleportUtil;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.text.LiteralText;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+
+import static net.minecraft.server.command.CommandManager.literal;
+
+public class QuickTravelCommand {
+    private static final Text ERROR_NO_ANCHOR = new LiteralText("There is no bed, respawn anchor or world spawn to teleport from in this dimension.");
+
+    public static void register(CommandDispatcher<ServerCommandSource> dispatcher, boolean dedicated) {
+        dispatcher.register(
+            literal("quicktravel")
+                .then(literal("nearest")
+                    .requires(source -> source.hasPermissionLevel(ModConfig.nearestPermissionLevel))
+                    .executes(QuickTravelCommand::showNearest)
+                )
+                .then(literal("stats")
+                    .requires(source -> source.hasPermissionLevel(2))
+                    .executes(QuickTravelCommand::showStats)
+                )
+                .then(literal("hot")
+                    .requires(source -> source.hasPermissionLevel(2))
+                    .executes(QuickTravelCommand::showHotDestinations)
+                )
+        );
+    }
+
+    private static int showNearest(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
+        var source = context.getSource();
+        var player = source.getPlayer();
+        var world = source.getWorld();
+        Metrics.NEAREST_COMMANDS.increment();
+
+        var from = player.getPos();
+        var nearest = TeleportUtil.findNearestAnchor(world, from);
+        if (nearest == null) {
+            throw new SimpleCommandExceptionType(ERROR_NO_ANCHOR).create();
+        }
+
+        var message = new LiteralText(TeleportUtil.describeAnchor(world, player, nearest) + ".");
+
+        if (TeleportUtil.isNearby(from, nearest)) {
+            message.append(new LiteralText("\nYou can teleport from here.").formatted(Formatting.GREEN));
+        } else {
+            message.append(new LiteralText("\nYou need to be within " + TeleportUtil.MAX_DISTANCE + " blocks of it to teleport.").formatted(Formatting.GRAY));
+        }
+
+        source.sendFeedback(message, false);
+
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private static int showHotDestinations(CommandContext<ServerCommandSource> context) {
+        var message = new LiteralText("Hot destinations kept loaded (" + HotDestinations.getResidentCount() + "/" + ModConfig.hotDestinations + "):")
+            .formatted(Formatting.YELLOW);
+        var hits = Metrics.HOT_DESTINATION_HITS.get();
+        var total = hits + Metrics.HOT_DESTINATION_MISSES.get();
+        if (total > 0) {
+            message.append(new LiteralText(String.format("\nHit rate: %.1f%% of %d teleports", 100.0 * hits / total, total)).formatted(Formatting.GRAY));
+        }
+
+        // Least recently used first, that one is released next
+        for (var line : HotDestinations.describeResident()) {
+            message.append(new LiteralText("\n" + line).formatted(Formatting.GRAY));
+        }
+
+        context.getSource().sendFeedback(message, false);
+
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private static int showStats(CommandContext<ServerCommandSource> context) {
+        var message = new LiteralText("Quick Travel stats:").formatted(Formatting.YELLOW);
+        for (var line : Metrics.summarize()) {
+            message.append(new LiteralText("\n" + line).formatted(Formatting.GRAY));
+        }
+
+        context.getSource().sendFeedback(message, false);
+
+        return Command.SINGLE_SUCCESS;
+    }
+}
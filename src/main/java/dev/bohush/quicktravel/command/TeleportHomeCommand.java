@@ -5,9 +5,12 @@ import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.context.CommandContext;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import com.mojang.brigadier.exceptions.SimpleCommandExceptionType;
+import dev.bohush.quicktravel.util.AdmissionControl;
+import dev.bohush.quicktravel.util.ChunkPrewarmer;
+import dev.bohush.quicktravel.util.EligibilityCheck;
+import dev.bohush.quicktravel.util.Metrics;
 import dev.bohush.quicktravel.util.TeleportUtil;
 import net.minecraft.server.command.ServerCommandSource;
-import net.minecraft.world.World;
 
 import static net.minecraft.server.command.CommandManager.literal;
 
@@ -22,21 +25,43 @@ public class TeleportHomeCommand {
         var source = context.getSource();
         var player = source.getPlayer();
         var world = source.getWorld();
+        Metrics.HOME_COMMANDS.increment();
 
-        if (player.world.getRegistryKey() != World.OVERWORLD) {
-            throw new SimpleCommandExceptionType(TeleportUtil.ERROR_INVALID_DIMENSION).create();
+        // Teleports stay within the dimension, so nothing is loaded in another one
+        var spawnPos = player.getSpawnPointPosition();
+        if (spawnPos != null && player.getSpawnPointDimension() != world.getRegistryKey()) {
+            throw new SimpleCommandExceptionType(TeleportUtil.ERROR_HOME_OTHER_DIMENSION).create();
         }
 
-        if (!TeleportUtil.canTeleport(world, player)) {
-            throw new SimpleCommandExceptionType(TeleportUtil.ERROR_TOO_FAR_AWAY).create();
+        if (spawnPos == null) {
+            throw new SimpleCommandExceptionType(TeleportUtil.ERROR_NO_BED).create();
         }
 
-        var targetPosition = TeleportUtil.getBedWakeUpPosition(world, player);
-        if (targetPosition == null) {
-            throw new SimpleCommandExceptionType(TeleportUtil.ERROR_NO_BED).create();
+        // A command that could not be submitted must not use up a token
+        if (EligibilityCheck.isInFlight(player)) {
+            throw new SimpleCommandExceptionType(TeleportUtil.ERROR_IN_PROGRESS).create();
+        }
+
+        var rejection = AdmissionControl.tryAdmit(player);
+        if (rejection != null) {
+            throw new SimpleCommandExceptionType(rejection).create();
         }
 
-        TeleportUtil.teleportPlayer(world, player, targetPosition);
+        ChunkPrewarmer.warm(world, spawnPos, ChunkPrewarmer.PREWARM);
+
+        var spawnAngle = player.getSpawnAngle();
+        var submitted = EligibilityCheck.submit(world, player, (currentPlayer, canTeleport) -> {
+            if (!canTeleport) {
+                source.sendError(TeleportUtil.getTooFarAwayError(world, currentPlayer));
+                return;
+            }
+
+            TeleportUtil.teleportToBedWhenLoaded(world, currentPlayer, spawnPos, spawnAngle, () -> source.sendError(TeleportUtil.ERROR_NO_BED));
+        });
+
+        if (!submitted) {
+            throw new SimpleCommandExceptionType(TeleportUtil.ERROR_IN_PROGRESS).create();
+        }
 
         return Command.SINGLE_SUCCESS;
     }
@@ -7,6 +7,9 @@ import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import com.mojang.brigadier.exceptions.SimpleCommandExceptionType;
 import com.mojang.brigadier.suggestion.Suggestions;
 import com.mojang.brigadier.suggestion.SuggestionsBuilder;
+import dev.bohush.quicktravel.util.AdmissionControl;
+import dev.bohush.quicktravel.util.EligibilityCheck;
+import dev.bohush.quicktravel.util.Metrics;
 import dev.bohush.quicktravel.util.TeleportRequest;
 import dev.bohush.quicktravel.util.TeleportUtil;
 import net.minecraft.command.argument.EntityArgumentType;
@@ -15,16 +18,20 @@ import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.text.ClickEvent;
 import net.minecraft.text.HoverEvent;
 import net.minecraft.text.LiteralText;
+import net.minecraft.text.MutableText;
+import net.minecraft.text.Text;
 import net.minecraft.util.Formatting;
-import net.minecraft.world.World;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.concurrent.CompletableFuture;
 
 import static net.minecraft.server.command.CommandManager.argument;
 import static net.minecraft.server.command.CommandManager.literal;
 
 public class TeleportRequestCommand {
+    private static final Text ERROR_REQUEST_PENDING = new LiteralText("You already have a teleport request pending.");
+
     public static void register(CommandDispatcher<ServerCommandSource> dispatcher, boolean dedicated) {
         dispatcher.register(
             literal("tpa")
@@ -58,33 +65,83 @@ public class TeleportRequestCommand {
         var source = context.getSource();
         var player = source.getPlayer();
         var world = source.getWorld();
+        Metrics.REQUEST_COMMANDS.increment();
+
+        // A command that could not be submitted must not use up a token
+        if (EligibilityCheck.isInFlight(player)) {
+            throw new SimpleCommandExceptionType(TeleportUtil.ERROR_IN_PROGRESS).create();
+        }
 
-        if (player.world.getRegistryKey() != World.OVERWORLD) {
-            throw new SimpleCommandExceptionType(TeleportUtil.ERROR_INVALID_DIMENSION).create();
+        var rejection = AdmissionControl.tryAdmit(player);
+        if (rejection != null) {
+            throw new SimpleCommandExceptionType(rejection).create();
         }
 
-        if (!TeleportUtil.canTeleport(world, player)) {
-            throw new SimpleCommandExceptionType(TeleportUtil.ERROR_TOO_FAR_AWAY).create();
+        // Teleports stay within the dimension, so nothing is loaded in another one
+        if (target.getSpawnPointPosition() != null && target.getSpawnPointDimension() != world.getRegistryKey()) {
+            throw new SimpleCommandExceptionType(new LiteralText(target.getEntityName()).append(TeleportUtil.ERROR_TARGET_HOME_OTHER_DIMENSION)).create();
         }
 
-        if (TeleportUtil.getBedWakeUpPosition(world, target) == null) {
+        // Whether the bed is obstructed is only known once its chunk is loaded, that is checked on accept
+        if (target.getSpawnPointPosition() == null) {
             throw new SimpleCommandExceptionType(new LiteralText(target.getEntityName()).append(TeleportUtil.ERROR_TARGET_NO_BED)).create();
         }
 
+        if (TeleportRequest.hasPending(player)) {
+            throw new SimpleCommandExceptionType(ERROR_REQUEST_PENDING).create();
+        }
+
+        var targetUuid = target.getUuid();
+        var submitted = EligibilityCheck.submit(world, player, (currentPlayer, canTeleport) -> {
+            if (!canTeleport) {
+                source.sendError(TeleportUtil.getTooFarAwayError(world, currentPlayer));
+                return;
+            }
+
+            var currentTarget = world.getServer().getPlayerManager().getPlayer(targetUuid);
+            if (currentTarget == null) {
+                return;
+            }
+
+            sendRequest(source, currentPlayer, currentTarget);
+        });
+
+        if (!submitted) {
+            throw new SimpleCommandExceptionType(TeleportUtil.ERROR_IN_PROGRESS).create();
+        }
+
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private static void sendRequest(ServerCommandSource source, ServerPlayerEntity player, ServerPlayerEntity target) {
         var requesterName = player.getEntityName();
         var targetName = target.getEntityName();
 
+        // Only the UUID is kept, the entity may be disconnected or replaced by a respawn before the timeout
+        var playerManager = source.getServer().getPlayerManager();
+        var playerUuid = player.getUuid();
         if (!TeleportRequest.create(player, target, () -> {
-            player.sendMessage(
+            var currentPlayer = playerManager.getPlayer(playerUuid);
+            if (currentPlayer == null) {
+                return;
+            }
+
+            currentPlayer.sendMessage(
                 new LiteralText("Teleport request to " + targetName  + " has timed out.")
                     .formatted(Formatting.RED),
                 false
             );
         })) {
-            throw new SimpleCommandExceptionType(new LiteralText("You already have a teleport request pending.")).create();
+            source.sendError(ERROR_REQUEST_PENDING);
+            return;
         }
 
-        var message = new LiteralText("")
+        target.sendMessage(createRequestMessage(requesterName), false);
+        source.sendFeedback(new LiteralText("Teleport to " + targetName + " has been requested."), false);
+    }
+
+    static MutableText createRequestMessage(String requesterName) {
+        return new LiteralText("")
             .append(new LiteralText(requesterName).formatted(Formatting.YELLOW))
             .append(" has requested to teleport to your home:\n ")
             .append(new LiteralText("[Accept]")
@@ -105,47 +162,74 @@ public class TeleportRequestCommand {
             .append(new LiteralText(".\nThis request will time out in " + TeleportRequest.TIMEOUT_SECONDS + " seconds.")
                 .formatted(Formatting.ITALIC, Formatting.GRAY)
             );
-
-        target.sendMessage(message, false);
-        source.sendFeedback(new LiteralText("Teleport to " + targetName + " has been requested."), false);
-
-        return Command.SINGLE_SUCCESS;
     }
 
     private static int acceptTeleport(CommandContext<ServerCommandSource> context, @Nullable ServerPlayerEntity requester) throws CommandSyntaxException {
         var source = context.getSource();
         var player = source.getPlayer();
-        var world = source.getWorld();
         var playerName = player.getEntityName();
 
         var requests = TeleportRequest.finish(requester, player);
+        Metrics.ACCEPT_COMMANDS.increment();
+        Metrics.REQUESTS_ACCEPTED.add(requests.size());
 
-        // Check if the target player has home bed and get its wake-up position.
-        var targetPosition = TeleportUtil.getBedWakeUpPosition(world, player);
-        if (targetPosition == null) {
+        // Check if the target player has home bed, its wake-up position is looked up once its chunk is loaded.
+        // Requesters are teleported within the home's dimension, wherever the target player is.
+        var spawnPos = player.getSpawnPointPosition();
+        var spawnAngle = player.getSpawnAngle();
+        var world = spawnPos == null ? null : source.getServer().getWorld(player.getSpawnPointDimension());
+        if (world == null) {
             for (var request : requests) {
-                request.respondError(playerName + TeleportUtil.ERROR_TARGET_NO_BED);
+                request.respondError(playerName + TeleportUtil.ERROR_TARGET_NO_BED.getString());
             }
 
             throw new SimpleCommandExceptionType(TeleportUtil.ERROR_NO_BED).create();
         }
 
-        // Try to teleport all requesters
+        // Check all requesters together, so accepting a crowd costs about as much as accepting one
+        var checkedRequests = new ArrayList<TeleportRequest>();
+        var checkedPlayers = new ArrayList<ServerPlayerEntity>();
         for (var request : requests) {
-            if (request.getRequester().world.getRegistryKey() != World.OVERWORLD) {
-                request.respondError(TeleportUtil.ERROR_INVALID_DIMENSION.asString());
+            var requestPlayer = request.getRequester();
+            if (requestPlayer == null) {
                 continue;
             }
 
-            if (!TeleportUtil.canTeleport(world, request.getRequester())) {
-                request.respondError(TeleportUtil.ERROR_TOO_FAR_AWAY.asString());
+            if (requestPlayer.world != world) {
+                request.respondError(playerName + TeleportUtil.ERROR_TARGET_HOME_OTHER_DIMENSION.asString());
                 continue;
             }
 
-            request.respond(playerName + " has accepted your teleport request.");
-            TeleportUtil.teleportPlayer(world, request.getRequester(), targetPosition);
+            if (EligibilityCheck.isInFlight(requestPlayer)) {
+                request.respondError(TeleportUtil.ERROR_IN_PROGRESS.asString());
+                continue;
+            }
+
+            checkedRequests.add(request);
+            checkedPlayers.add(requestPlayer);
+        }
+
+        // Every requester counts against the server-wide limit of checks per tick, the ones over it are turned away
+        var admitted = AdmissionControl.reserveChecks(checkedPlayers.size());
+        for (int i = checkedPlayers.size() - 1; i >= admitted; i--) {
+            checkedRequests.remove(i).respondError(AdmissionControl.ERROR_BUSY.getString());
+            checkedPlayers.remove(i);
         }
 
+        // Try to teleport all requesters
+        EligibilityCheck.submitAll(world, checkedPlayers, (index, currentRequester, canTeleport) -> {
+            var request = checkedRequests.get(index);
+            if (!canTeleport) {
+                request.respondError(TeleportUtil.getTooFarAwayError(world, currentRequester).getString());
+                return;
+            }
+
+            request.respond(playerName + " has accepted your teleport request.");
+            TeleportUtil.teleportToBedWhenLoaded(world, currentRequester, spawnPos, spawnAngle, () -> {
+                request.respondError(playerName + TeleportUtil.ERROR_TARGET_NO_BED.getString());
+            });
+        });
+
         return Command.SINGLE_SUCCESS;
     }
 
@@ -154,6 +238,9 @@ public class TeleportRequestCommand {
         var player = source.getPlayer();
 
         var requests = TeleportRequest.finish(requester, player);
+        Metrics.DENY_COMMANDS.increment();
+        Metrics.REQUESTS_DENIED.add(requests.size());
+
         for (var request : requests) {
             request.respond(player.getEntityName() + " has denied your teleport request.");
         }
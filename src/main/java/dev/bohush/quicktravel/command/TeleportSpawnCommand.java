@@ -5,6 +5,10 @@ import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.context.CommandContext;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import com.mojang.brigadier.exceptions.SimpleCommandExceptionType;
+import dev.bohush.quicktravel.util.AdmissionControl;
+import dev.bohush.quicktravel.util.ChunkPrewarmer;
+import dev.bohush.quicktravel.util.EligibilityCheck;
+import dev.bohush.quicktravel.util.Metrics;
 import dev.bohush.quicktravel.util.TeleportUtil;
 import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.util.math.Vec3d;
@@ -23,18 +27,39 @@ public class TeleportSpawnCommand {
         var source = context.getSource();
         var player = source.getPlayer();
         var world = source.getWorld();
+        Metrics.SPAWN_COMMANDS.increment();
 
+        // World spawn only exists in the overworld
         if (player.world.getRegistryKey() != World.OVERWORLD) {
             throw new SimpleCommandExceptionType(TeleportUtil.ERROR_INVALID_DIMENSION).create();
         }
 
-        if (!TeleportUtil.canTeleport(world, player)) {
-            throw new SimpleCommandExceptionType(TeleportUtil.ERROR_TOO_FAR_AWAY).create();
+        // A command that could not be submitted must not use up a token
+        if (EligibilityCheck.isInFlight(player)) {
+            throw new SimpleCommandExceptionType(TeleportUtil.ERROR_IN_PROGRESS).create();
         }
 
-        var spawnPos = world.getSpawnPos();
-        var targetPosition = new Vec3d(spawnPos.getX() + 0.5, spawnPos.getY(), spawnPos.getZ() + 0.5);
-        TeleportUtil.teleportPlayer(world, player, targetPosition);
+        var rejection = AdmissionControl.tryAdmit(player);
+        if (rejection != null) {
+            throw new SimpleCommandExceptionType(rejection).create();
+        }
+
+        ChunkPrewarmer.warm(world, world.getSpawnPos(), ChunkPrewarmer.PREWARM);
+
+        var submitted = EligibilityCheck.submit(world, player, (currentPlayer, canTeleport) -> {
+            if (!canTeleport) {
+                source.sendError(TeleportUtil.getTooFarAwayError(world, currentPlayer));
+                return;
+            }
+
+            var spawnPos = world.getSpawnPos();
+            var targetPosition = new Vec3d(spawnPos.getX() + 0.5, spawnPos.getY(), spawnPos.getZ() + 0.5);
+            TeleportUtil.teleportPlayerWhenLoaded(world, currentPlayer, targetPosition);
+        });
+
+        if (!submitted) {
+            throw new SimpleCommandExceptionType(TeleportUtil.ERROR_IN_PROGRESS).create();
+        }
 
         return Command.SINGLE_SUCCESS;
     }
@@ -0,0 +1,141 @@
+package dev.bohush.quicktravel.config;
+
+import net.fabricmc.loader.api.FabricLoader;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Server settings, loaded from {@code config/quick-travel.properties}.
+ * <p>
+ * Missing keys keep their defaults and the file is rewritten with all keys, so new settings show up after an update.
+ */
+public class ModConfig {
+    private static final String FILE_NAME = "quick-travel.properties";
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * How many teleport commands a player can use in a row before being throttled.
+     */
+    public static int commandBurst = 3;
+
+    /**
+     * How many ticks it takes to regain one teleport command.
+     */
+    public static int commandRefillTicks = 100;
+
+    /**
+     * How many eligibility checks can be started per tick on the whole server, 0 disables the limit.
+     */
+    public static int maxChecksPerTick = 20;
+
+    /**
+     * How many teleports can run in a single tick.
+     */
+    public static int teleportsPerTick = 10;
+
+    /**
+     * How much time teleports can take in a single tick, at least one teleport runs regardless.
+     */
+    public static int teleportBudgetMicros = 2000;
+
+    /**
+     * Whether teleports show particles and play sounds.
+     */
+    public static boolean teleportEffects = true;
+
+    /**
+     * How many particle and sound packets teleport effects can send per tick, 0 disables the limit.
+     */
+    public static int maxEffectPacketsPerTick = 200;
+
+    /**
+     * How many of the most popular destination chunks are kept loaded, 0 disables it.
+     */
+    public static int hotDestinations = 8;
+
+    /**
+     * How many teleports to a chunk make it a hot destination that is kept loaded.
+     */
+    public static int hotDestinationThreshold = 3;
+
+    /**
+     * Permission level needed for {@code /quicktravel nearest}.
+     */
+    public static int nearestPermissionLevel = 0;
+
+    /**
+     * How many saved player files are read in parallel when the spawn points are loaded.
+     */
+    public static int scanThreads = 4;
+
+    public static void load() {
+        var path = FabricLoader.getInstance().getConfigDir().resolve(FILE_NAME);
+        var properties = new Properties();
+
+        if (Files.isRegularFile(path)) {
+            try (var reader = Files.newBufferedReader(path)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to read {}, using defaults", path, e);
+            }
+        }
+
+        commandBurst = getInt(properties, "command-burst", commandBurst, 1);
+        commandRefillTicks = getInt(properties, "command-refill-ticks", commandRefillTicks, 0);
+        maxChecksPerTick = getInt(properties, "max-checks-per-tick", maxChecksPerTick, 0);
+        teleportsPerTick = getInt(properties, "teleports-per-tick", teleportsPerTick, 1);
+        teleportBudgetMicros = getInt(properties, "teleport-budget-micros", teleportBudgetMicros, 0);
+        teleportEffects = getBoolean(properties, "teleport-effects", teleportEffects);
+        maxEffectPacketsPerTick = getInt(properties, "max-effect-packets-per-tick", maxEffectPacketsPerTick, 0);
+        hotDestinations = getInt(properties, "hot-destinations", hotDestinations, 0);
+        hotDestinationThreshold = getInt(properties, "hot-destination-threshold", hotDestinationThreshold, 1);
+        nearestPermissionLevel = getInt(properties, "nearest-permission-level", nearestPermissionLevel, 0);
+        scanThreads = getInt(properties, "scan-threads", scanThreads, 1);
+
+        try {
+            Files.createDirectories(path.getParent());
+            try (var writer = Files.newBufferedWriter(path)) {
+                properties.store(writer, "Quick Travel");
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write {}", path, e);
+        }
+    }
+
+    private static int getInt(Properties properties, String key, int defaultValue, int min) {
+        var value = defaultValue;
+        var text = properties.getProperty(key);
+
+        if (text != null) {
+            try {
+                value = Math.max(min, Integer.parseInt(text.trim()));
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Invalid value of {} in {}: {}", key, FILE_NAME, text);
+            }
+        }
+
+        properties.setProperty(key, Integer.toString(value));
+        return value;
+    }
+
+    private static boolean getBoolean(Properties properties, String key, boolean defaultValue) {
+        var value = defaultValue;
+        var text = properties.getProperty(key);
+
+        if (text != null) {
+            switch (text.trim().toLowerCase(Locale.ROOT)) {
+                case "true" -> value = true;
+                case "false" -> value = false;
+                default -> LOGGER.warn("Invalid value of {} in {}: {}", key, FILE_NAME, text);
+            }
+        }
+
+        properties.setProperty(key, Boolean.toString(value));
+        return value;
+    }
+}
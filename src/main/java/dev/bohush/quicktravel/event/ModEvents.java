@@ -0,0 +1,75 @@
+package dev.bohush.quicktravel.event;
+
+import dev.bohush.quicktravel.util.AdmissionControl;
+import dev.bohush.quicktravel.util.AnchorIndex;
+import dev.bohush.quicktravel.util.AnchorZoneTracker;
+import dev.bohush.quicktravel.util.BedCache;
+import dev.bohush.quicktravel.util.ChunkPrewarmer;
+import dev.bohush.quicktravel.util.HotDestinations;
+import dev.bohush.quicktravel.util.Metrics;
+import dev.bohush.quicktravel.util.RegionBlockProbe;
+import dev.bohush.quicktravel.util.SpawnPointStore;
+import dev.bohush.quicktravel.util.TeleportEffects;
+import dev.bohush.quicktravel.util.TeleportRequest;
+import dev.bohush.quicktravel.util.TeleportScheduler;
+import dev.bohush.quicktravel.util.WakeUpPositionCache;
+import net.fabricmc.fabric.api.entity.event.v1.ServerPlayerEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerChunkEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
+
+public class ModEvents {
+    public static void registerEvents() {
+        ServerLifecycleEvents.SERVER_STARTED.register(AnchorIndex::rebuild);
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+            AnchorIndex.clear();
+            AnchorZoneTracker.clear();
+            AdmissionControl.clear();
+            BedCache.clear();
+            WakeUpPositionCache.clear();
+            RegionBlockProbe.clear();
+            ChunkPrewarmer.clear();
+            TeleportScheduler.clear();
+            TeleportEffects.clear();
+            HotDestinations.clear();
+            SpawnPointStore.close();
+        });
+
+        ServerChunkEvents.CHUNK_LOAD.register((world, chunk) -> {
+            BedCache.onChunkChanged(world, chunk.getPos());
+            WakeUpPositionCache.onChunkChanged(world, chunk.getPos());
+        });
+        ServerChunkEvents.CHUNK_UNLOAD.register((world, chunk) -> {
+            BedCache.onChunkChanged(world, chunk.getPos());
+            RegionBlockProbe.onChunkUnloaded(world, chunk.getPos());
+            WakeUpPositionCache.onChunkChanged(world, chunk.getPos());
+        });
+
+        ServerTickEvents.END_SERVER_TICK.register(server -> {
+            TeleportRequest.tick();
+            AdmissionControl.tick(server);
+            AnchorZoneTracker.tick(server);
+            ChunkPrewarmer.tick(server);
+            TeleportScheduler.tick(server);
+            TeleportEffects.tick(server);
+            HotDestinations.tick(server);
+            RegionBlockProbe.tick(server);
+            Metrics.tick(server);
+        });
+
+        ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> {
+            var player = handler.getPlayer();
+            AnchorIndex.update(player.getUuid(), player.getSpawnPointDimension(), player.getSpawnPointPosition());
+        });
+
+        ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> {
+            TeleportRequest.removePlayer(handler.getPlayer());
+            AnchorZoneTracker.removePlayer(handler.getPlayer());
+        });
+
+        ServerPlayerEvents.AFTER_RESPAWN.register((oldPlayer, newPlayer, alive) -> {
+            AnchorIndex.update(newPlayer.getUuid(), newPlayer.getSpawnPointDimension(), newPlayer.getSpawnPointPosition());
+        });
+    }
+}
@@ -0,0 +1,16 @@
+package dev.bohush.quicktravel.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("dev.bohush.quicktravel.AnchorLookup")
+@Label("Anchor Lookup")
+@Description("Collecting spawn points near a player from the anchor index (worker thread)")
+@Category("Quick Travel")
+public class AnchorLookupEvent extends jdk.jfr.Event {
+    @Label("Candidates")
+    @Description("Spawn points within teleport distance, not yet checked for a bed")
+    public int candidates;
+}
@@ -0,0 +1,41 @@
+package dev.bohush.quicktravel.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("dev.bohush.quicktravel.EligibilityCheck")
+@Label("Eligibility Check")
+@Description("Checking on the server thread whether a player is close enough to world spawn or a bed")
+@Category("Quick Travel")
+public class EligibilityCheckEvent extends jdk.jfr.Event {
+    private static final EventType TYPE = EventType.getEventType(EligibilityCheckEvent.class);
+
+    @Label("Players")
+    @Description("Players checked at once, more than one for the requesters accepted by one /tpaccept")
+    public int players;
+
+    @Label("Near World Spawn")
+    public boolean nearSpawn;
+
+    @Label("Candidates")
+    @Description("Spawn points within teleport distance")
+    public int candidates;
+
+    @Label("Beds Checked")
+    @Description("Candidates whose block had to be checked before the answer was known")
+    public int bedsChecked;
+
+    @Label("Result")
+    @Description("Whether all checked players can teleport")
+    public boolean canTeleport;
+
+    /**
+     * Whether a recording has the event enabled, checked before creating one so the checks allocate nothing otherwise.
+     */
+    public static boolean isRecording() {
+        return TYPE.isEnabled();
+    }
+}
@@ -0,0 +1,18 @@
+package dev.bohush.quicktravel.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("dev.bohush.quicktravel.PlayerFileRead")
+@Label("Offline Player File Read")
+@Category("Quick Travel")
+public class PlayerFileReadEvent extends jdk.jfr.Event {
+    @Label("Player UUID")
+    public String player;
+
+    @Label("File Size")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,34 @@
+package dev.bohush.quicktravel.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("dev.bohush.quicktravel.Teleport")
+@Label("Teleport")
+@Category("Quick Travel")
+public class TeleportEvent extends jdk.jfr.Event {
+    @Label("Player")
+    public String player;
+
+    @Label("X")
+    public double x;
+
+    @Label("Y")
+    public double y;
+
+    @Label("Z")
+    public double z;
+
+    @Label("Chunk Wait")
+    @Description("How long the teleport waited for the destination chunk to load")
+    @Timespan
+    public long chunkWait;
+
+    @Label("Queue Wait")
+    @Description("How long the teleport waited for its turn in the teleport scheduler")
+    @Timespan
+    public long queueWait;
+}
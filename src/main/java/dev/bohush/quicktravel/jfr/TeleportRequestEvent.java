@@ -0,0 +1,26 @@
+package dev.bohush.quicktravel.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("dev.bohush.quicktravel.TeleportRequest")
+@Label("Teleport Request")
+@Category("Quick Travel")
+public class TeleportRequestEvent extends jdk.jfr.Event {
+    public static final String CREATE = "create";
+    public static final String FINISH = "finish";
+    public static final String EXPIRE = "expire";
+
+    @Label("Action")
+    public String action;
+
+    @Label("Requester")
+    public String requester;
+
+    @Label("Target")
+    public String target;
+
+    @Label("Pending Requests")
+    public int pending;
+}
@@ -0,0 +1,21 @@
+package dev.bohush.quicktravel.mixin;
+
+import dev.bohush.quicktravel.util.AnchorIndex;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.registry.RegistryKey;
+import net.minecraft.world.World;
+import org.jetbrains.annotations.Nullable;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(ServerPlayerEntity.class)
+public abstract class ServerPlayerEntityMixin {
+    @Inject(method = "setSpawnPoint", at = @At("TAIL"))
+    private void onSetSpawnPoint(RegistryKey<World> dimension, @Nullable BlockPos pos, float angle, boolean forced, boolean sendMessage, CallbackInfo ci) {
+        var player = (ServerPlayerEntity)(Object)this;
+        AnchorIndex.update(player.getUuid(), dimension, pos);
+    }
+}
@@ -0,0 +1,28 @@
+package dev.bohush.quicktravel.mixin;
+
+import dev.bohush.quicktravel.util.BedCache;
+import dev.bohush.quicktravel.util.WakeUpPositionCache;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.chunk.WorldChunk;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@Mixin(WorldChunk.class)
+public abstract class WorldChunkMixin {
+    @Inject(method = "setBlockState", at = @At("RETURN"))
+    private void onSetBlockState(BlockPos pos, BlockState state, boolean moved, CallbackInfoReturnable<BlockState> cir) {
+        // Null means nothing has changed
+        if (cir.getReturnValue() == null) {
+            return;
+        }
+
+        var world = ((WorldChunk)(Object)this).getWorld();
+        if (!world.isClient()) {
+            BedCache.onBlockChanged(world, pos);
+            WakeUpPositionCache.onBlockChanged(world, pos);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package dev.bohush.quicktravel.mixin;
+
+import dev.bohush.quicktravel.util.SpawnPointStore;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.util.math.GlobalPos;
+import net.minecraft.world.WorldSaveHandler;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import java.io.File;
+
+@Mixin(WorldSaveHandler.class)
+public abstract class WorldSaveHandlerMixin {
+    @Shadow
+    @Final
+    private File playerDataDir;
+
+    // Right after the new file replaces the old one, vanilla catches a failed save and this is skipped then
+    @Inject(
+        method = "savePlayerData",
+        at = @At(
+            value = "INVOKE",
+            target = "Lnet/minecraft/util/Util;backupAndReplace(Ljava/io/File;Ljava/io/File;Ljava/io/File;)V",
+            shift = At.Shift.AFTER
+        )
+    )
+    private void onSavePlayerData(PlayerEntity player, CallbackInfo ci) {
+        if (!(player instanceof ServerPlayerEntity serverPlayer)) {
+            return;
+        }
+
+        var spawnPos = serverPlayer.getSpawnPointPosition();
+        var spawnPoint = spawnPos == null ? null : GlobalPos.create(serverPlayer.getSpawnPointDimension(), spawnPos);
+
+        SpawnPointStore.update(player.getUuid(), spawnPoint, new File(playerDataDir, player.getUuidAsString() + ".dat"));
+    }
+}
@@ -0,0 +1,103 @@
+package dev.bohush.quicktravel.util;
+
+import dev.bohush.quicktravel.config.ModConfig;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.text.LiteralText;
+import net.minecraft.text.Text;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.UUID;
+
+/**
+ * Throttles teleport commands before any eligibility check is started.
+ * <p>
+ * Every player has a token bucket of {@link ModConfig#commandBurst} commands that refills one command every
+ * {@link ModConfig#commandRefillTicks}, and the whole server is limited to {@link ModConfig#maxChecksPerTick}.
+ * A bucket is stored as the tick at which it is full again, so admitting a command is a single primitive map lookup.
+ * Must only be used from the server thread.
+ */
+public class AdmissionControl {
+    public static final Text ERROR_THROTTLED = new LiteralText("You are using teleport commands too often, try again in a moment.");
+    public static final Text ERROR_BUSY = new LiteralText("The server is busy, try again in a moment.");
+
+    private static final int PRUNE_INTERVAL_TICKS = 20 * 60;
+
+    private static final Long2LongOpenHashMap fullAt = new Long2LongOpenHashMap();
+    private static int checksThisTick;
+
+    /**
+     * Takes a token from the player's bucket and a slot from this tick's global limit.
+     * @return Reason of the rejection, or null if the command can proceed.
+     */
+    @Nullable
+    public static Text tryAdmit(ServerPlayerEntity player) {
+        var now = (long)player.getServer().getTicks();
+        var key = getKey(player.getUuid());
+        var interval = ModConfig.commandRefillTicks;
+
+        // Bucket is empty once it would take longer than the whole burst to refill it
+        var next = Math.max(fullAt.get(key), now) + interval;
+        if (next - now > (long)ModConfig.commandBurst * interval) {
+            Metrics.THROTTLED.increment();
+            return ERROR_THROTTLED;
+        }
+
+        if (ModConfig.maxChecksPerTick > 0 && checksThisTick >= ModConfig.maxChecksPerTick) {
+            Metrics.THROTTLED.increment();
+            return ERROR_BUSY;
+        }
+
+        checksThisTick++;
+        if (interval > 0) {
+            fullAt.put(key, next);
+        }
+
+        return null;
+    }
+
+    /**
+     * Takes slots from this tick's global limit for the checks of one admitted command,
+     * such as the requesters accepted by one {@code /tpaccept}, which bypass the per-player buckets.
+     * @return How many of the checks fit in this tick, the rest have to be rejected with {@link #ERROR_BUSY}.
+     */
+    public static int reserveChecks(int count) {
+        var reserved = count;
+        if (ModConfig.maxChecksPerTick > 0) {
+            reserved = Math.max(0, Math.min(count, ModConfig.maxChecksPerTick - checksThisTick));
+        }
+
+        checksThisTick += reserved;
+        if (reserved < count) {
+            Metrics.THROTTLED.add(count - reserved);
+        }
+
+        return reserved;
+    }
+
+    public static void tick(MinecraftServer server) {
+        checksThisTick = 0;
+
+        // Full buckets are the same as missing ones
+        if (server.getTicks() % PRUNE_INTERVAL_TICKS == 0 && !fullAt.isEmpty()) {
+            var now = server.getTicks();
+            var iterator = fullAt.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.nextLong() <= now) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    public static void clear() {
+        fullAt.clear();
+        checksThisTick = 0;
+    }
+
+    private static long getKey(UUID uuid) {
+        // Collisions only make two players share a bucket
+        return uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits();
+    }
+}
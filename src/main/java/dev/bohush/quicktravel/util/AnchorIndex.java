@@ -0,0 +1,352 @@
+package dev.bohush.quicktravel.util;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.GlobalPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.util.registry.RegistryKey;
+import net.minecraft.world.World;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Spatial index of player spawn points (beds and respawn anchors), bucketed by chunk.
+ * <p>
+ * Answers "is there a bed within {@link TeleportUtil#MAX_DISTANCE} blocks" by looking at the few chunks
+ * around the player instead of walking every online and saved player.
+ * Positions are stored packed by {@link BlockPos#asLong()}, so queries do not allocate.
+ * Every dimension has its own shard, so a query never sees spawn points of another dimension.
+ * <p>
+ * For {@link #findNearest}, the chunk cells are grouped into coarser levels, 4x4 cells of one level make a cell of the next,
+ * and every level counts the spawn points in its cells. Updates touch one cell per level.
+ * <p>
+ * The index can be queried from worker threads, block states of the returned positions
+ * must still be checked on the server thread.
+ */
+public class AnchorIndex {
+    // Coarser levels above the chunk cells, the coarsest cells are 2^22 chunks wide and cover the whole world
+    private static final int LEVELS = 11;
+    private static final int LEVEL_BITS = 2;
+
+    private static final HashMap<RegistryKey<World>, Shard> shards = new HashMap<>();
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static volatile CompletableFuture<?> ready = CompletableFuture.completedFuture(null);
+    private static volatile int generation;
+    // Players whose spawn point changed while the saved ones were being read, their saved spawn points are outdated
+    private static final HashSet<UUID> updatedDuringRebuild = new HashSet<>();
+    private static boolean rebuilding;
+
+    public static synchronized void update(UUID playerUuid, RegistryKey<World> dimension, @Nullable BlockPos spawnPos) {
+        if (rebuilding) {
+            updatedDuringRebuild.add(playerUuid);
+        }
+
+        update(playerUuid, dimension, spawnPos, true);
+    }
+
+    private static void update(UUID playerUuid, RegistryKey<World> dimension, @Nullable BlockPos spawnPos, boolean notifyTracker) {
+        // The spawn point may have been in another dimension
+        for (var entry : shards.entrySet()) {
+            var shard = entry.getValue();
+            if (!shard.anchors.containsKey(playerUuid)) {
+                continue;
+            }
+
+            var previous = shard.anchors.removeLong(playerUuid);
+            var cellKey = getCellKey(previous);
+            var cell = shard.cells.get(cellKey);
+            if (cell != null) {
+                cell.rem(previous);
+                if (cell.isEmpty()) {
+                    shard.cells.remove(cellKey);
+                }
+            }
+            shard.count(previous, -1);
+
+            if (notifyTracker) {
+                AnchorZoneTracker.onAnchorChanged(entry.getKey(), previous);
+            }
+            break;
+        }
+
+        if (spawnPos != null) {
+            var shard = shards.computeIfAbsent(dimension, key -> new Shard());
+            var packedPos = spawnPos.asLong();
+            shard.anchors.put(playerUuid, packedPos);
+            shard.cells.computeIfAbsent(getCellKey(packedPos), key -> new LongArrayList(1)).add(packedPos);
+            shard.count(packedPos, 1);
+
+            if (notifyTracker) {
+                AnchorZoneTracker.onAnchorChanged(dimension, packedPos);
+            }
+        }
+    }
+
+    /**
+     * Fills the index with spawn points of all saved players in the background, must be called from the server thread.
+     * <p>
+     * Saved spawn points are read on the {@link SavedPlayerScan} pool and merged on the server thread once all are read.
+     * Players whose spawn point was updated in the meantime keep the newer one, and online players are added again
+     * as their spawn points may not have been saved yet.
+     */
+    public static void rebuild(MinecraftServer server) {
+        clear();
+        synchronized (AnchorIndex.class) {
+            rebuilding = true;
+        }
+
+        var generation = ++AnchorIndex.generation;
+        var spawnPoints = new HashMap<UUID, GlobalPos>();
+        SpawnPointStore.prepareOpen();
+        ready = SavedPlayerScan.runAsync(() -> SpawnPointStore.open(server, spawnPoints::put))
+            .handleAsync((result, error) -> {
+                if (error != null) {
+                    LOGGER.error("Failed to load saved spawn points", error);
+                }
+
+                // The server has been stopped in the meantime
+                if (generation != AnchorIndex.generation) {
+                    return null;
+                }
+
+                synchronized (AnchorIndex.class) {
+                    spawnPoints.forEach((playerUuid, spawnPoint) -> {
+                        if (spawnPoint != null && !updatedDuringRebuild.contains(playerUuid)) {
+                            update(playerUuid, spawnPoint.getDimension(), spawnPoint.getPos(), false);
+                        }
+                    });
+
+                    for (var player : server.getPlayerManager().getPlayerList()) {
+                        update(player.getUuid(), player.getSpawnPointDimension(), player.getSpawnPointPosition(), false);
+                    }
+
+                    rebuilding = false;
+                    updatedDuringRebuild.clear();
+                }
+
+                // Cheaper than notifying the tracker of every loaded spawn point
+                AnchorZoneTracker.invalidateAll();
+
+                LOGGER.info("Loaded {} saved spawn points", spawnPoints.size());
+                return null;
+            }, server);
+    }
+
+    public static boolean isReady() {
+        return ready.isDone();
+    }
+
+    /**
+     * Blocks until the saved spawn points are loaded, must not be called from the server thread.
+     */
+    public static void awaitReady() {
+        ready.join();
+    }
+
+    public static synchronized void clear() {
+        generation++;
+        shards.clear();
+        rebuilding = false;
+        updatedDuringRebuild.clear();
+        AnchorZoneTracker.invalidateAll();
+    }
+
+    /**
+     * Adds all indexed spawn points near the position to the list as packed positions,
+     * without checking whether there still is a bed.
+     */
+    public static synchronized void getNearby(RegistryKey<World> dimension, Vec3d pos, LongList result) {
+        var shard = shards.get(dimension);
+        if (shard != null) {
+            findNearby(shard, pos, result);
+        }
+    }
+
+    /**
+     * Passes every indexed spawn point in the chunk range (inclusive) to the consumer as a packed position.
+     */
+    public static synchronized void forEachInChunks(RegistryKey<World> dimension, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ, LongConsumer consumer) {
+        var shard = shards.get(dimension);
+        if (shard == null) {
+            return;
+        }
+
+        for (int x = minChunkX; x <= maxChunkX; x++) {
+            for (int z = minChunkZ; z <= maxChunkZ; z++) {
+                var cell = shard.cells.get(ChunkPos.toLong(x, z));
+                if (cell == null) {
+                    continue;
+                }
+
+                for (int i = 0; i < cell.size(); i++) {
+                    consumer.accept(cell.getLong(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the indexed spawn point closest to the position that passes the filter.
+     * <p>
+     * Cells are searched from the coarsest level down, nearest cell first, and cells that cannot hold anything closer
+     * than the best spawn point so far are never opened, so a query looks at a few cells per level
+     * instead of every spawn point.
+     * @param isValid Filter for the packed candidate positions, only called for candidates closer than the best so far.
+     */
+    @Nullable
+    public static synchronized BlockPos findNearest(RegistryKey<World> dimension, Vec3d pos, LongPredicate isValid) {
+        var shard = shards.get(dimension);
+        if (shard == null || shard.anchors.isEmpty()) {
+            return null;
+        }
+
+        var queue = new PriorityQueue<SearchCell>(Comparator.comparingDouble(cell -> cell.squaredDistance));
+        for (var iterator = shard.levels[LEVELS - 1].keySet().iterator(); iterator.hasNext(); ) {
+            var key = iterator.nextLong();
+            queue.add(new SearchCell(pos, LEVELS, ChunkPos.getPackedX(key), ChunkPos.getPackedZ(key)));
+        }
+
+        var found = false;
+        var nearest = 0L;
+        var nearestDistance = Double.MAX_VALUE;
+        while (!queue.isEmpty()) {
+            var cell = queue.poll();
+            if (cell.squaredDistance >= nearestDistance) {
+                break;
+            }
+
+            if (cell.level == 0) {
+                var anchors = shard.cells.get(ChunkPos.toLong(cell.x, cell.z));
+                for (int i = 0; i < anchors.size(); i++) {
+                    var candidate = anchors.getLong(i);
+                    var candidateDistance = TeleportUtil.getSquaredDistance(pos, candidate);
+                    if (candidateDistance < nearestDistance && isValid.test(candidate)) {
+                        found = true;
+                        nearest = candidate;
+                        nearestDistance = candidateDistance;
+                    }
+                }
+                continue;
+            }
+
+            var childLevel = cell.level - 1;
+            for (int dx = 0; dx < 1 << LEVEL_BITS; dx++) {
+                for (int dz = 0; dz < 1 << LEVEL_BITS; dz++) {
+                    var childX = (cell.x << LEVEL_BITS) + dx;
+                    var childZ = (cell.z << LEVEL_BITS) + dz;
+                    if (shard.isOccupied(childLevel, childX, childZ)) {
+                        queue.add(new SearchCell(pos, childLevel, childX, childZ));
+                    }
+                }
+            }
+        }
+
+        return found ? BlockPos.fromLong(nearest) : null;
+    }
+
+    private static void findNearby(Shard shard, Vec3d pos, LongList result) {
+        int minX = ChunkSectionPos.getSectionCoord(MathHelper.floor(pos.getX() - TeleportUtil.MAX_DISTANCE));
+        int maxX = ChunkSectionPos.getSectionCoord(MathHelper.floor(pos.getX() + TeleportUtil.MAX_DISTANCE));
+        int minZ = ChunkSectionPos.getSectionCoord(MathHelper.floor(pos.getZ() - TeleportUtil.MAX_DISTANCE));
+        int maxZ = ChunkSectionPos.getSectionCoord(MathHelper.floor(pos.getZ() + TeleportUtil.MAX_DISTANCE));
+
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                var cell = shard.cells.get(ChunkPos.toLong(x, z));
+                if (cell == null) {
+                    continue;
+                }
+
+                for (int i = 0; i < cell.size(); i++) {
+                    var spawnPos = cell.getLong(i);
+                    if (TeleportUtil.isNearby(pos.getX(), pos.getY(), pos.getZ(), spawnPos)) {
+                        result.add(spawnPos);
+                    }
+                }
+            }
+        }
+    }
+
+    private static class Shard {
+        private final Object2LongOpenHashMap<UUID> anchors = new Object2LongOpenHashMap<>();
+        private final Long2ObjectOpenHashMap<LongArrayList> cells = new Long2ObjectOpenHashMap<>();
+        // Spawn point counts of the coarser levels, level 1 is at index 0
+        private final Long2IntOpenHashMap[] levels = new Long2IntOpenHashMap[LEVELS];
+
+        private Shard() {
+            for (int i = 0; i < LEVELS; i++) {
+                levels[i] = new Long2IntOpenHashMap();
+            }
+        }
+
+        private void count(long packedPos, int delta) {
+            var chunkX = ChunkSectionPos.getSectionCoord(BlockPos.unpackLongX(packedPos));
+            var chunkZ = ChunkSectionPos.getSectionCoord(BlockPos.unpackLongZ(packedPos));
+            for (int level = 1; level <= LEVELS; level++) {
+                var key = ChunkPos.toLong(chunkX >> (level * LEVEL_BITS), chunkZ >> (level * LEVEL_BITS));
+                var counts = levels[level - 1];
+                if (counts.addTo(key, delta) + delta <= 0) {
+                    counts.remove(key);
+                }
+            }
+        }
+
+        private boolean isOccupied(int level, int x, int z) {
+            var key = ChunkPos.toLong(x, z);
+            return level == 0 ? cells.containsKey(key) : levels[level - 1].containsKey(key);
+        }
+    }
+
+    /**
+     * Cell of some level waiting to be searched, with its horizontal distance to the searched position.
+     * Spawn points in it are at least that far away, whatever their Y.
+     */
+    private static class SearchCell {
+        private final int level;
+        private final int x;
+        private final int z;
+        private final double squaredDistance;
+
+        private SearchCell(Vec3d pos, int level, int x, int z) {
+            this.level = level;
+            this.x = x;
+            this.z = z;
+
+            var shift = 4 + level * LEVEL_BITS;
+            var dx = getDistance(pos.getX(), (long)x << shift, (long)(x + 1) << shift);
+            var dz = getDistance(pos.getZ(), (long)z << shift, (long)(z + 1) << shift);
+            squaredDistance = dx * dx + dz * dz;
+        }
+
+        private static double getDistance(double coordinate, long min, long max) {
+            return coordinate < min ? min - coordinate : coordinate > max ? coordinate - max : 0;
+        }
+    }
+
+    private static long getCellKey(long packedPos) {
+        return ChunkPos.toLong(
+            ChunkSectionPos.getSectionCoord(BlockPos.unpackLongX(packedPos)),
+            ChunkSectionPos.getSectionCoord(BlockPos.unpackLongZ(packedPos))
+        );
+    }
+}
@@ -0,0 +1,190 @@
+package dev.bohush.quicktravel.util;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.registry.RegistryKey;
+import net.minecraft.world.World;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.function.LongConsumer;
+
+/**
+ * Keeps track of which spawn points are within reach of every online player, in the player's dimension.
+ * <p>
+ * The answer is computed for the 8-block cell the player is in: spawn points that can reach some point of the cell are
+ * the candidates, and one that reaches every point of it makes the player inside its zone, then
+ * {@link TeleportUtil#canTeleport} only has to check that its bed is still there. The player is only
+ * re-evaluated after moving to another cell or when a spawn point within reach of the cell changes,
+ * so the cost is spread over movement instead of landing on the commands.
+ * Must only be used from the server thread.
+ */
+public class AnchorZoneTracker {
+    private static final int CELL_BITS = 3;
+    private static final int CELL_SIZE = 1 << CELL_BITS;
+    private static final int MAX_DISTANCE_SQUARED = TeleportUtil.MAX_DISTANCE * TeleportUtil.MAX_DISTANCE;
+
+    private static final HashMap<UUID, Zone> zones = new HashMap<>();
+    private static final Evaluator evaluator = new Evaluator();
+
+    /**
+     * @return Spawn points that may be near the player, with the one whose zone the player is inside first.
+     * Null if the spawn points are still being loaded.
+     */
+    @Nullable
+    public static LongList getCandidates(ServerPlayerEntity player) {
+        var zone = getZone(player);
+        return zone == null ? null : zone.candidates;
+    }
+
+    /**
+     * @return Whether the first of {@link #getCandidates} is within reach from anywhere in the player's cell.
+     * False if the spawn points are still being loaded.
+     */
+    public static boolean isInsideZone(ServerPlayerEntity player) {
+        var zone = getZone(player);
+        return zone != null && zone.inside;
+    }
+
+    /**
+     * Re-evaluates players who moved to another cell, so commands rarely have to.
+     */
+    public static void tick(MinecraftServer server) {
+        if (!AnchorIndex.isReady()) {
+            return;
+        }
+
+        for (var player : server.getPlayerManager().getPlayerList()) {
+            getZone(player);
+        }
+    }
+
+    public static void onAnchorChanged(RegistryKey<World> dimension, long packedPos) {
+        if (zones.isEmpty()) {
+            return;
+        }
+
+        for (var zone : zones.values()) {
+            if (!zone.dirty && zone.dimension == dimension && getSquaredDistance(packedPos, zone, false) < MAX_DISTANCE_SQUARED) {
+                zone.dirty = true;
+            }
+        }
+    }
+
+    public static void invalidateAll() {
+        for (var zone : zones.values()) {
+            zone.dirty = true;
+        }
+    }
+
+    public static void removePlayer(ServerPlayerEntity player) {
+        zones.remove(player.getUuid());
+    }
+
+    public static void clear() {
+        zones.clear();
+    }
+
+    @Nullable
+    private static Zone getZone(ServerPlayerEntity player) {
+        if (!AnchorIndex.isReady()) {
+            return null;
+        }
+
+        var zone = zones.get(player.getUuid());
+        if (zone == null) {
+            zone = new Zone();
+            zones.put(player.getUuid(), zone);
+        }
+
+        var cellX = MathHelper.floor(player.getX()) >> CELL_BITS;
+        var cellY = MathHelper.floor(player.getY()) >> CELL_BITS;
+        var cellZ = MathHelper.floor(player.getZ()) >> CELL_BITS;
+        var dimension = player.world.getRegistryKey();
+        if (zone.dirty || zone.dimension != dimension || zone.cellX != cellX || zone.cellY != cellY || zone.cellZ != cellZ) {
+            evaluate(zone, dimension, cellX, cellY, cellZ);
+        }
+
+        return zone;
+    }
+
+    private static void evaluate(Zone zone, RegistryKey<World> dimension, int cellX, int cellY, int cellZ) {
+        zone.dimension = dimension;
+        zone.cellX = cellX;
+        zone.cellY = cellY;
+        zone.cellZ = cellZ;
+        zone.dirty = false;
+        zone.inside = false;
+        zone.candidates.clear();
+
+        var minX = cellX << CELL_BITS;
+        var minZ = cellZ << CELL_BITS;
+        evaluator.zone = zone;
+        AnchorIndex.forEachInChunks(
+            dimension,
+            (minX - TeleportUtil.MAX_DISTANCE) >> 4,
+            (minZ - TeleportUtil.MAX_DISTANCE) >> 4,
+            (minX + CELL_SIZE + TeleportUtil.MAX_DISTANCE) >> 4,
+            (minZ + CELL_SIZE + TeleportUtil.MAX_DISTANCE) >> 4,
+            evaluator
+        );
+        evaluator.zone = null;
+    }
+
+    /**
+     * Squared distance from the center of the block to the nearest or the farthest point of the zone's cell.
+     */
+    private static double getSquaredDistance(long packedPos, Zone zone, boolean farthest) {
+        var dx = getDistance(BlockPos.unpackLongX(packedPos) + 0.5, zone.cellX << CELL_BITS, farthest);
+        var dy = getDistance(BlockPos.unpackLongY(packedPos) + 0.5, zone.cellY << CELL_BITS, farthest);
+        var dz = getDistance(BlockPos.unpackLongZ(packedPos) + 0.5, zone.cellZ << CELL_BITS, farthest);
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static double getDistance(double center, int min, boolean farthest) {
+        var max = min + CELL_SIZE;
+        if (farthest) {
+            return Math.max(Math.abs(center - min), Math.abs(center - max));
+        }
+
+        return center < min ? min - center : center > max ? center - max : 0;
+    }
+
+    private static class Zone {
+        private final LongArrayList candidates = new LongArrayList();
+        @Nullable
+        private RegistryKey<World> dimension;
+        private int cellX;
+        private int cellY;
+        private int cellZ;
+        private boolean inside;
+        private boolean dirty = true;
+    }
+
+    /**
+     * Sorts spawn points of the chunks around a cell into the zone, reused to avoid allocating a lambda per evaluation.
+     */
+    private static class Evaluator implements LongConsumer {
+        @Nullable
+        private Zone zone;
+
+        @Override
+        public void accept(long packedPos) {
+            if (getSquaredDistance(packedPos, zone, false) >= MAX_DISTANCE_SQUARED) {
+                return;
+            }
+
+            if (!zone.inside && getSquaredDistance(packedPos, zone, true) < MAX_DISTANCE_SQUARED) {
+                zone.inside = true;
+                zone.candidates.add(0, packedPos);
+            } else {
+                zone.candidates.add(packedPos);
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package dev.bohush.quicktravel.util;
+
+import it.unimi.dsi.fastutil.longs.Long2BooleanOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.block.BedBlock;
+import net.minecraft.block.Block;
+import net.minecraft.block.RespawnAnchorBlock;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+
+/**
+ * Remembers whether there is a bed at a spawn point position in the overworld.
+ * Other dimensions are checked without caching, there respawn anchors count too where they work.
+ * <p>
+ * Entries are dropped when the block at the position changes and when its chunk is loaded or unloaded,
+ * so repeated checks of the same spawn points do not have to touch the chunk.
+ * Positions in chunks that are not loaded are {@link AnchorState#UNKNOWN}, reading them from the region file
+ * is left to {@link EligibilityCheck}, which does it with {@link RegionBlockProbe} on its workers.
+ * Must only be used from the server thread.
+ */
+public class BedCache {
+    private static final Long2BooleanOpenHashMap beds = new Long2BooleanOpenHashMap();
+    private static final Long2ObjectOpenHashMap<LongOpenHashSet> chunks = new Long2ObjectOpenHashMap<>();
+    private static final BlockPos.Mutable mutablePos = new BlockPos.Mutable();
+
+    /**
+     * Same as {@link #getAnchorState(ServerWorld, BlockPos)} for a position packed by {@link BlockPos#asLong()}.
+     */
+    public static AnchorState getAnchorState(ServerWorld world, long packedPos) {
+        return getAnchorState(world, mutablePos.set(packedPos));
+    }
+
+    /**
+     * @return {@link AnchorState#UNKNOWN} if the chunk is not loaded, the block is never read from the region file here.
+     */
+    public static AnchorState getAnchorState(ServerWorld world, BlockPos pos) {
+        var chunkKey = ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4);
+        if (world.getRegistryKey() != World.OVERWORLD) {
+            return world.isChunkLoaded(chunkKey) ? AnchorState.of(checkAnchor(world, pos)) : AnchorState.UNKNOWN;
+        }
+
+        var key = pos.asLong();
+        if (beds.containsKey(key)) {
+            return AnchorState.of(beds.get(key));
+        }
+
+        if (!world.isChunkLoaded(chunkKey)) {
+            return AnchorState.UNKNOWN;
+        }
+
+        var isAnchor = checkAnchor(world, pos);
+        beds.put(key, isAnchor);
+        chunks.computeIfAbsent(chunkKey, ignored -> new LongOpenHashSet()).add(key);
+
+        return AnchorState.of(isAnchor);
+    }
+
+    /**
+     * Same as {@link #isAnchor(ServerWorld, BlockPos)} for a position packed by {@link BlockPos#asLong()}.
+     */
+    public static boolean isAnchor(ServerWorld world, long packedPos) {
+        return getAnchorState(world, packedPos) == AnchorState.ANCHOR;
+    }
+
+    /**
+     * Whether there is known to be an anchor at the position, false for positions in chunks that are not loaded.
+     */
+    public static boolean isAnchor(ServerWorld world, BlockPos pos) {
+        return getAnchorState(world, pos) == AnchorState.ANCHOR;
+    }
+
+    public static void onBlockChanged(World world, BlockPos pos) {
+        if (beds.isEmpty() || world.getRegistryKey() != World.OVERWORLD) {
+            return;
+        }
+
+        var key = pos.asLong();
+        if (!beds.containsKey(key)) {
+            return;
+        }
+
+        beds.remove(key);
+
+        var chunkKey = ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4);
+        var positions = chunks.get(chunkKey);
+        if (positions != null) {
+            positions.remove(key);
+            if (positions.isEmpty()) {
+                chunks.remove(chunkKey);
+            }
+        }
+    }
+
+    public static void onChunkChanged(ServerWorld world, ChunkPos chunkPos) {
+        if (world.getRegistryKey() != World.OVERWORLD) {
+            return;
+        }
+
+        var positions = chunks.remove(chunkPos.toLong());
+        if (positions == null) {
+            return;
+        }
+
+        for (var iterator = positions.iterator(); iterator.hasNext(); ) {
+            beds.remove(iterator.nextLong());
+        }
+    }
+
+    public static void clear() {
+        beds.clear();
+        chunks.clear();
+    }
+
+    /**
+     * Whether a player can have their spawn point at the block in the world, as in {@link net.minecraft.entity.player.PlayerEntity#findRespawnPosition}.
+     * Respawn anchors count regardless of their charge.
+     */
+    public static boolean isAnchorBlock(World world, Block block) {
+        if (block instanceof BedBlock) {
+            return world.getDimension().isBedWorking();
+        }
+
+        return block instanceof RespawnAnchorBlock && world.getDimension().isRespawnAnchorWorking();
+    }
+
+    private static boolean checkAnchor(ServerWorld world, BlockPos pos) {
+        return isAnchorBlock(world, world.getBlockState(pos).getBlock());
+    }
+
+    public enum AnchorState {
+        ANCHOR,
+        NO_ANCHOR,
+        /**
+         * The chunk is not loaded.
+         */
+        UNKNOWN;
+
+        private static AnchorState of(boolean isAnchor) {
+            return isAnchor ? ANCHOR : NO_ANCHOR;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package dev.bohush.quicktravel.util;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ChunkTicketType;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.UUID;
+
+/**
+ * Loads teleport destinations ahead of time with chunk tickets, so the chunk system loads them in the background
+ * instead of the teleport stalling the server thread.
+ * Must only be used from the server thread.
+ */
+public class ChunkPrewarmer {
+    /**
+     * Keeps a destination loaded for a few seconds while a command is being processed.
+     */
+    public static final ChunkTicketType<ChunkPos> PREWARM = ChunkTicketType.create("quick_travel_prewarm", Comparator.comparingLong(ChunkPos::toLong), 100);
+
+    /**
+     * Keeps the target's home loaded while a teleport request waits to be accepted.
+     * The argument is the requester's UUID, so every request holds its own ticket and releasing one keeps the others.
+     */
+    public static final ChunkTicketType<UUID> REQUEST = ChunkTicketType.create("quick_travel_request", UUID::compareTo, (int)TeleportRequest.TIMEOUT_SECONDS * 20);
+
+    /**
+     * For how long a teleport waits for its destination, it is executed anyway after that.
+     */
+    public static final int MAX_WAIT_TICKS = 40;
+
+    private static final ArrayList<PendingAction> pending = new ArrayList<>();
+
+    /**
+     * Starts loading the chunk with the position and its neighbours.
+     */
+    public static void warm(ServerWorld world, BlockPos pos, ChunkTicketType<ChunkPos> ticketType) {
+        var chunkPos = new ChunkPos(pos);
+        world.getChunkManager().addTicket(ticketType, chunkPos, 1, chunkPos);
+    }
+
+    /**
+     * Starts loading the chunk with the position and its neighbours until the request is released,
+     * see {@link #releaseRequest}.
+     */
+    public static void warmForRequest(ServerWorld world, BlockPos pos, UUID requesterUuid) {
+        world.getChunkManager().addTicket(REQUEST, new ChunkPos(pos), 1, requesterUuid);
+    }
+
+    public static void releaseRequest(ServerWorld world, BlockPos pos, UUID requesterUuid) {
+        world.getChunkManager().removeTicket(REQUEST, new ChunkPos(pos), 1, requesterUuid);
+    }
+
+    /**
+     * Starts loading the chunk with the position and runs the action once it is loaded,
+     * or after {@link #MAX_WAIT_TICKS} at the latest.
+     */
+    public static void whenLoaded(ServerWorld world, BlockPos pos, Runnable action) {
+        warm(world, pos, PREWARM);
+
+        var chunkPos = new ChunkPos(pos);
+        if (world.getChunkManager().isChunkLoaded(chunkPos.x, chunkPos.z)) {
+            Metrics.CHUNK_WAIT.record(0);
+            action.run();
+            return;
+        }
+
+        pending.add(new PendingAction(world, chunkPos, world.getServer().getTicks() + MAX_WAIT_TICKS, System.nanoTime(), action));
+    }
+
+    public static void tick(MinecraftServer server) {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        var ready = new ArrayList<PendingAction>();
+        pending.removeIf(action -> {
+            if (action.deadline > server.getTicks() && !action.world.getChunkManager().isChunkLoaded(action.chunkPos.x, action.chunkPos.z)) {
+                return false;
+            }
+
+            ready.add(action);
+            return true;
+        });
+
+        // Actions may queue more actions, so they only run once the list is no longer iterated
+        for (var action : ready) {
+            Metrics.CHUNK_WAIT.recordSince(action.startNanos);
+            action.action.run();
+        }
+    }
+
+    public static void clear() {
+        pending.clear();
+    }
+
+    private static class PendingAction {
+        private final ServerWorld world;
+        private final ChunkPos chunkPos;
+        private final int deadline;
+        private final long startNanos;
+        private final Runnable action;
+
+        private PendingAction(ServerWorld world, ChunkPos chunkPos, int deadline, long startNanos, Runnable action) {
+            this.world = world;
+            this.chunkPos = chunkPos;
+            this.deadline = deadline;
+            this.startNanos = startNanos;
+            this.action = action;
+        }
+    }
+}
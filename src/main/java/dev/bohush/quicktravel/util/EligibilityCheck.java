@@ -0,0 +1,299 @@
+package dev.bohush.quicktravel.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import dev.bohush.quicktravel.jfr.AnchorLookupEvent;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Vec3d;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Evaluates {@link TeleportUtil#canTeleport} for a command without stalling the server thread.
+ * <p>
+ * Spawn points near the player are normally already known to {@link AnchorZoneTracker}, then the check and the callback
+ * run right away. Otherwise (while the saved spawn points are loading) the player's position is captured,
+ * nearby spawn points are collected on a worker thread, and the bed checks and the callback run back on the server thread.
+ * Spawn points in chunks that are not loaded are read from the region files by {@link RegionBlockProbe} on a worker thread too,
+ * only when no anchor in the loaded chunks is close enough.
+ */
+public class EligibilityCheck {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final ExecutorService workers = Executors.newFixedThreadPool(
+        2,
+        new ThreadFactoryBuilder().setNameFormat("Quick Travel Worker #%d").setDaemon(true).build()
+    );
+
+    // Only accessed from the server thread
+    private static final HashSet<UUID> inFlight = new HashSet<>();
+
+    /**
+     * Starts the check, must be called from the server thread.
+     * <p>
+     * The callback may be called before this returns. It is not called if the player leaves the server or the world in the meantime.
+     * @return False if the player already has a check in flight.
+     */
+    public static boolean submit(ServerWorld world, ServerPlayerEntity player, ResultCallback callback) {
+        var playerUuid = player.getUuid();
+        if (inFlight.contains(playerUuid)) {
+            return false;
+        }
+
+        var server = world.getServer();
+        var dimension = world.getRegistryKey();
+        var from = player.getPos();
+        var start = System.nanoTime();
+        Metrics.ELIGIBILITY_CHECKS.increment();
+
+        // Usually the candidates are already tracked, then the check is answered right away
+        var candidates = AnchorZoneTracker.getCandidates(player);
+        if (candidates != null) {
+            complete(world, player, from, candidates, AnchorZoneTracker.isInsideZone(player), start, callback);
+            return true;
+        }
+
+        inFlight.add(playerUuid);
+
+        CompletableFuture.supplyAsync(() -> {
+                // Commands right after the start wait for the saved spawn points here, not on the server thread
+                AnchorIndex.awaitReady();
+
+                var event = new AnchorLookupEvent();
+                event.begin();
+
+                var nearbySpawnPoints = new LongArrayList();
+                AnchorIndex.getNearby(dimension, from, nearbySpawnPoints);
+
+                event.candidates = nearbySpawnPoints.size();
+                event.commit();
+
+                return nearbySpawnPoints;
+            }, workers)
+            .whenCompleteAsync((nearbySpawnPoints, error) -> {
+                inFlight.remove(playerUuid);
+
+                if (error != null) {
+                    LOGGER.error("Failed to check whether {} can teleport", player.getEntityName(), error);
+                    return;
+                }
+
+                var currentPlayer = server.getPlayerManager().getPlayer(playerUuid);
+                if (currentPlayer == null || currentPlayer.world != world) {
+                    return;
+                }
+
+                complete(world, currentPlayer, from, nearbySpawnPoints, false, start, callback);
+            }, server);
+
+        return true;
+    }
+
+    /**
+     * Same as {@link #submit} for several players at once, such as all requesters accepted by one {@code /tpaccept}.
+     * Spawn points near the players are collected together and every bed is checked at most once,
+     * see {@link TeleportUtil#canTeleportAll}. Players with a check in flight must be left out, see {@link #isInFlight}.
+     */
+    public static void submitAll(ServerWorld world, List<ServerPlayerEntity> players, BatchResultCallback callback) {
+        if (players.isEmpty()) {
+            return;
+        }
+
+        var server = world.getServer();
+        var dimension = world.getRegistryKey();
+        var count = players.size();
+        var playerUuids = new UUID[count];
+        var positions = new Vec3d[count];
+        var start = System.nanoTime();
+        Metrics.ELIGIBILITY_CHECKS.add(count);
+
+        var trackedSpawnPoints = new LongOpenHashSet();
+        var tracked = true;
+        for (int i = 0; i < count; i++) {
+            var player = players.get(i);
+            playerUuids[i] = player.getUuid();
+            positions[i] = player.getPos();
+
+            var candidates = tracked ? AnchorZoneTracker.getCandidates(player) : null;
+            if (candidates == null) {
+                tracked = false;
+            } else {
+                trackedSpawnPoints.addAll(candidates);
+            }
+        }
+
+        if (tracked) {
+            completeAll(world, playerUuids, positions, new LongArrayList(trackedSpawnPoints), start, callback);
+            return;
+        }
+
+        for (var playerUuid : playerUuids) {
+            inFlight.add(playerUuid);
+        }
+
+        CompletableFuture.supplyAsync(() -> {
+                AnchorIndex.awaitReady();
+
+                var event = new AnchorLookupEvent();
+                event.begin();
+
+                // Players accepted together are usually close to each other, so most of their spawn points are shared
+                var uniqueSpawnPoints = new LongOpenHashSet();
+                var buffer = new LongArrayList();
+                for (var from : positions) {
+                    buffer.clear();
+                    AnchorIndex.getNearby(dimension, from, buffer);
+                    uniqueSpawnPoints.addAll(buffer);
+                }
+
+                event.candidates = uniqueSpawnPoints.size();
+                event.commit();
+
+                return new LongArrayList(uniqueSpawnPoints);
+            }, workers)
+            .whenCompleteAsync((nearbySpawnPoints, error) -> {
+                for (var playerUuid : playerUuids) {
+                    inFlight.remove(playerUuid);
+                }
+
+                if (error != null) {
+                    LOGGER.error("Failed to check whether {} players can teleport", count, error);
+                    return;
+                }
+
+                completeAll(world, playerUuids, positions, nearbySpawnPoints, start, callback);
+            }, server);
+    }
+
+    public static boolean isInFlight(ServerPlayerEntity player) {
+        return inFlight.contains(player.getUuid());
+    }
+
+    private static void completeAll(ServerWorld world, UUID[] playerUuids, Vec3d[] positions, LongList nearbySpawnPoints, long start, BatchResultCallback callback) {
+        var unloadedSpawnPoints = new LongArrayList();
+        var results = TeleportUtil.canTeleportAll(world, positions, nearbySpawnPoints, unloadedSpawnPoints);
+        if (unloadedSpawnPoints.isEmpty()) {
+            finishAll(world, playerUuids, results, start, callback);
+            return;
+        }
+
+        for (var playerUuid : playerUuids) {
+            inFlight.add(playerUuid);
+        }
+
+        CompletableFuture.supplyAsync(() -> probeAnchors(world, unloadedSpawnPoints), workers)
+            .whenCompleteAsync((anchors, error) -> {
+                for (var playerUuid : playerUuids) {
+                    inFlight.remove(playerUuid);
+                }
+
+                if (error != null) {
+                    LOGGER.error("Failed to check whether {} players can teleport", playerUuids.length, error);
+                    return;
+                }
+
+                TeleportUtil.resolveNearby(positions, results, anchors);
+                finishAll(world, playerUuids, results, start, callback);
+            }, world.getServer());
+    }
+
+    private static void finishAll(ServerWorld world, UUID[] playerUuids, boolean[] results, long start, BatchResultCallback callback) {
+        var playerManager = world.getServer().getPlayerManager();
+
+        for (int i = 0; i < playerUuids.length; i++) {
+            var player = playerManager.getPlayer(playerUuids[i]);
+            if (player == null || player.world != world) {
+                continue;
+            }
+
+            Metrics.ELIGIBILITY_CHECK.recordSince(start);
+            if (!results[i]) {
+                Metrics.TOO_FAR_AWAY.increment();
+            }
+
+            callback.onResult(i, player, results[i]);
+        }
+    }
+
+    private static void complete(ServerWorld world, ServerPlayerEntity player, Vec3d from, LongList nearbySpawnPoints, boolean insideFirst, long start, ResultCallback callback) {
+        var unloadedSpawnPoints = new LongArrayList();
+        var canTeleport = TeleportUtil.canTeleport(world, from, nearbySpawnPoints, insideFirst, unloadedSpawnPoints);
+        if (canTeleport || unloadedSpawnPoints.isEmpty()) {
+            finish(player, canTeleport, start, callback);
+            return;
+        }
+
+        var server = world.getServer();
+        var playerUuid = player.getUuid();
+        inFlight.add(playerUuid);
+
+        CompletableFuture.supplyAsync(() -> probeAnchors(world, unloadedSpawnPoints), workers)
+            .whenCompleteAsync((anchors, error) -> {
+                inFlight.remove(playerUuid);
+
+                if (error != null) {
+                    LOGGER.error("Failed to check whether {} can teleport", player.getEntityName(), error);
+                    return;
+                }
+
+                var currentPlayer = server.getPlayerManager().getPlayer(playerUuid);
+                if (currentPlayer == null || currentPlayer.world != world) {
+                    return;
+                }
+
+                finish(currentPlayer, !anchors.isEmpty(), start, callback);
+            }, server);
+    }
+
+    /**
+     * Runs on a worker thread.
+     * @return The spawn points that have an anchor in the saved chunk.
+     */
+    private static LongList probeAnchors(ServerWorld world, LongList spawnPoints) {
+        var anchors = new LongArrayList();
+        var pos = new BlockPos.Mutable();
+        for (int i = 0; i < spawnPoints.size(); i++) {
+            var spawnPos = spawnPoints.getLong(i);
+            if (RegionBlockProbe.isAnchor(world, pos.set(spawnPos))) {
+                anchors.add(spawnPos);
+            }
+        }
+
+        return anchors;
+    }
+
+    private static void finish(ServerPlayerEntity player, boolean canTeleport, long start, ResultCallback callback) {
+        Metrics.ELIGIBILITY_CHECK.recordSince(start);
+        if (!canTeleport) {
+            Metrics.TOO_FAR_AWAY.increment();
+        }
+
+        callback.onResult(player, canTeleport);
+    }
+
+    public interface ResultCallback {
+        /**
+         * @param player Current entity of the player, it may differ from the submitted one if the player respawned.
+         */
+        void onResult(ServerPlayerEntity player, boolean canTeleport);
+    }
+
+    public interface BatchResultCallback {
+        /**
+         * @param index Index of the player in the submitted list.
+         * @param player Current entity of the player, it may differ from the submitted one if the player respawned.
+         */
+        void onResult(int index, ServerPlayerEntity player, boolean canTeleport);
+    }
+}
@@ -0,0 +1,156 @@
+package dev.bohush.quicktravel.util;
+
+import dev.bohush.quicktravel.config.ModConfig;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ChunkTicketType;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Keeps the chunks players teleport to most often loaded, so teleports there never wait for the chunk to load.
+ * <p>
+ * Teleports are counted per destination chunk, and a chunk becomes resident once it reaches
+ * {@link ModConfig#hotDestinationThreshold} teleports. At most {@link ModConfig#hotDestinations} chunks are resident,
+ * the least recently used one is released to make room. Only the destination chunk itself is kept loaded, not its
+ * neighbours, so this never loads more than {@link ModConfig#hotDestinations} chunks. Counts are halved every few minutes,
+ * so destinations that are no longer popular are forgotten and eventually released.
+ * Must only be used from the server thread.
+ */
+public class HotDestinations {
+    /**
+     * Keeps a hot destination loaded until it is released, added with radius 0 so it covers a single chunk.
+     */
+    public static final ChunkTicketType<ChunkPos> HOT = ChunkTicketType.create("quick_travel_hot", Comparator.comparingLong(ChunkPos::toLong));
+
+    private static final int DECAY_INTERVAL_TICKS = 20 * 60 * 5;
+    private static final int TICKET_RADIUS = 0;
+
+    private static final Object2IntOpenHashMap<DestinationChunk> counts = new Object2IntOpenHashMap<>();
+    // Access order, the first entry is the least recently used, values are the ticket arguments
+    private static final LinkedHashMap<DestinationChunk, ChunkPos> resident = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Counts a teleport to the position, must be called when the teleport is scheduled,
+     * so commands that fail the eligibility check or find no bed are not counted.
+     */
+    public static void recordTeleport(ServerWorld world, BlockPos pos) {
+        if (ModConfig.hotDestinations == 0) {
+            return;
+        }
+
+        var chunk = new DestinationChunk(world, ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4));
+        var count = counts.addTo(chunk, 1) + 1;
+
+        // Looking the chunk up also makes it the most recently used
+        if (resident.get(chunk) != null) {
+            Metrics.HOT_DESTINATION_HITS.increment();
+            return;
+        }
+
+        Metrics.HOT_DESTINATION_MISSES.increment();
+        if (count < ModConfig.hotDestinationThreshold) {
+            return;
+        }
+
+        if (resident.size() >= ModConfig.hotDestinations) {
+            release(resident.keySet().iterator().next());
+        }
+
+        var chunkPos = new ChunkPos(chunk.chunkPos);
+        resident.put(chunk, chunkPos);
+        world.getChunkManager().addTicket(HOT, chunkPos, TICKET_RADIUS, chunkPos);
+    }
+
+    public static void tick(MinecraftServer server) {
+        if (counts.isEmpty() || server.getTicks() % DECAY_INTERVAL_TICKS != 0) {
+            return;
+        }
+
+        var released = new ArrayList<DestinationChunk>();
+        for (var iterator = counts.object2IntEntrySet().iterator(); iterator.hasNext(); ) {
+            var entry = iterator.next();
+            var chunk = entry.getKey();
+            var count = entry.getIntValue() / 2;
+            if (count > 0) {
+                entry.setValue(count);
+                continue;
+            }
+
+            iterator.remove();
+            if (resident.containsKey(chunk)) {
+                released.add(chunk);
+            }
+        }
+
+        for (var chunk : released) {
+            release(chunk);
+        }
+    }
+
+    /**
+     * Resident chunks from the least to the most recently used, e.g. "minecraft:overworld [12, -3]: 40 teleports".
+     */
+    public static List<String> describeResident() {
+        var lines = new ArrayList<String>();
+        for (var entry : resident.entrySet()) {
+            var chunk = entry.getKey();
+            var chunkPos = entry.getValue();
+            lines.add(chunk.world.getRegistryKey().getValue() + " [" + chunkPos.x + ", " + chunkPos.z + "]: " + counts.getInt(chunk) + " teleports");
+        }
+
+        return lines;
+    }
+
+    public static int getResidentCount() {
+        return resident.size();
+    }
+
+    /**
+     * The tickets are dropped with the worlds, so nothing has to be released.
+     */
+    public static void clear() {
+        counts.clear();
+        resident.clear();
+    }
+
+    private static void release(DestinationChunk chunk) {
+        var chunkPos = resident.remove(chunk);
+        if (chunkPos != null) {
+            chunk.world.getChunkManager().removeTicket(HOT, chunkPos, TICKET_RADIUS, chunkPos);
+        }
+    }
+
+    private static class DestinationChunk {
+        private final ServerWorld world;
+        private final long chunkPos;
+
+        private DestinationChunk(ServerWorld world, long chunkPos) {
+            this.world = world;
+            this.chunkPos = chunkPos;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof DestinationChunk other)) {
+                return false;
+            }
+            return world == other.world && chunkPos == other.chunkPos;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(world.getRegistryKey(), chunkPos);
+        }
+    }
+}
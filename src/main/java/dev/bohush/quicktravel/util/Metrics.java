@@ -0,0 +1,218 @@
+package dev.bohush.quicktravel.util;
+
+import net.minecraft.server.MinecraftServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of the teleport commands.
+ * <p>
+ * Recording is allocation-free and safe from any thread. Everything is shown by {@code /quicktravel stats}
+ * and logged periodically.
+ */
+public class Metrics {
+    private static final long LOG_INTERVAL_TICKS = 20 * 60 * 5;
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final List<Counter> counters = new ArrayList<>();
+    private static final List<LatencyHistogram> histograms = new ArrayList<>();
+
+    public static final Counter HOME_COMMANDS = counter("Commands /home");
+    public static final Counter SPAWN_COMMANDS = counter("Commands /spawn");
+    public static final Counter REQUEST_COMMANDS = counter("Commands /tpa");
+    public static final Counter ACCEPT_COMMANDS = counter("Commands /tpaccept");
+    public static final Counter DENY_COMMANDS = counter("Commands /tpdeny");
+    public static final Counter NEAREST_COMMANDS = counter("Commands /quicktravel nearest");
+
+    public static final Counter ELIGIBILITY_CHECKS = counter("Eligibility checks");
+    public static final Counter TOO_FAR_AWAY = counter("Rejected as too far away");
+    public static final Counter THROTTLED = counter("Rejected by admission control");
+    public static final Counter OFFLINE_FILES_READ = counter("Offline player files read");
+
+    public static final Counter REQUESTS_CREATED = counter("Requests created");
+    public static final Counter REQUESTS_ACCEPTED = counter("Requests accepted");
+    public static final Counter REQUESTS_DENIED = counter("Requests denied");
+    public static final Counter REQUESTS_TIMED_OUT = counter("Requests timed out");
+
+    public static final Counter TELEPORTS = counter("Teleports");
+    public static final Counter HOT_DESTINATION_HITS = counter("Teleports to hot destinations");
+    public static final Counter HOT_DESTINATION_MISSES = counter("Teleports to other destinations");
+    public static final Counter EFFECTS_MERGED = counter("Teleport effects merged");
+    public static final Counter EFFECT_PACKETS = counter("Teleport effect packets sent");
+    public static final Counter EFFECT_PACKETS_DROPPED = counter("Teleport effect packets dropped");
+
+    public static final LatencyHistogram CAN_TELEPORT = histogram("canTeleport");
+    public static final LatencyHistogram ELIGIBILITY_CHECK = histogram("Eligibility check (incl. worker)");
+    public static final LatencyHistogram CHUNK_WAIT = histogram("Destination chunk wait");
+    public static final LatencyHistogram TELEPORT_QUEUE_WAIT = histogram("Teleport queue wait");
+    public static final LatencyHistogram TELEPORT = histogram("teleportPlayer");
+
+    public static Counter counter(String name) {
+        var counter = new Counter(name);
+        counters.add(counter);
+        return counter;
+    }
+
+    public static LatencyHistogram histogram(String name) {
+        var histogram = new LatencyHistogram(name);
+        histograms.add(histogram);
+        return histogram;
+    }
+
+    public static List<String> summarize() {
+        var lines = new ArrayList<String>();
+
+        lines.add("Pending requests: " + TeleportRequest.getPendingCount());
+        lines.add("Queued teleports: " + TeleportScheduler.getQueuedCount() + " (max " + TeleportScheduler.getMaxQueuedCount() + ")");
+        for (var counter : counters) {
+            lines.add(counter.name + ": " + counter.get());
+        }
+
+        var checks = ELIGIBILITY_CHECKS.get();
+        if (checks > 0) {
+            lines.add(String.format("Too far away: %.1f%% of eligibility checks", 100.0 * TOO_FAR_AWAY.get() / checks));
+        }
+
+        var destinations = HOT_DESTINATION_HITS.get() + HOT_DESTINATION_MISSES.get();
+        if (destinations > 0) {
+            lines.add(String.format("Hot destination hit rate: %.1f%% (%d resident)", 100.0 * HOT_DESTINATION_HITS.get() / destinations, HotDestinations.getResidentCount()));
+        }
+
+        for (var histogram : histograms) {
+            lines.add(histogram.summarize());
+        }
+
+        return lines;
+    }
+
+    public static void tick(MinecraftServer server) {
+        if (server.getTicks() % LOG_INTERVAL_TICKS != 0 || ELIGIBILITY_CHECKS.get() == 0) {
+            return;
+        }
+
+        LOGGER.info("Quick Travel stats:\n  {}", String.join("\n  ", summarize()));
+    }
+
+    public static class Counter {
+        private final String name;
+        private final AtomicLong value = new AtomicLong();
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(long amount) {
+            value.addAndGet(amount);
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    /**
+     * Log-linear histogram of durations in nanoseconds, every power of two is split into 16 buckets (about 6% precision).
+     */
+    public static class LatencyHistogram {
+        private static final int SUB_BUCKET_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+        private final String name;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        private LatencyHistogram(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Records the time elapsed since the start, as returned by {@link System#nanoTime()}.
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public void record(long nanos) {
+            nanos = Math.max(0, nanos);
+            counts.incrementAndGet(getBucket(nanos));
+            count.incrementAndGet();
+            max.accumulateAndGet(nanos, Math::max);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * @return Upper bound of the duration in nanoseconds below which the given fraction of recorded durations falls.
+         */
+        public long getPercentile(double percentile) {
+            var total = count.get();
+            if (total == 0) {
+                return 0;
+            }
+
+            var threshold = Math.max(1, (long)Math.ceil(total * percentile));
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += counts.get(bucket);
+                if (seen >= threshold) {
+                    return Math.min(getLowerBound(bucket + 1) - 1, max.get());
+                }
+            }
+
+            return max.get();
+        }
+
+        public String summarize() {
+            return String.format(
+                "%s: %d samples, p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms",
+                name,
+                getCount(),
+                toMillis(getPercentile(0.5)),
+                toMillis(getPercentile(0.9)),
+                toMillis(getPercentile(0.99)),
+                toMillis(max.get())
+            );
+        }
+
+        private static int getBucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int)value;
+            }
+
+            var exponent = 63 - Long.numberOfLeadingZeros(value);
+            var subBucket = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        private static long getLowerBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            if (bucket >= BUCKETS) {
+                return Long.MAX_VALUE;
+            }
+
+            var exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            var subBucket = bucket % SUB_BUCKETS;
+            return (long)(SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        }
+
+        private static double toMillis(long nanos) {
+            return nanos / (double)TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+}
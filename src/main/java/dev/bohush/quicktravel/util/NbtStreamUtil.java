@@ -0,0 +1,59 @@
+package dev.bohush.quicktravel.util;
+
+import net.minecraft.nbt.NbtElement;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Helpers for walking uncompressed NBT streams without building the NBT tree.
+ */
+public class NbtStreamUtil {
+    public static void skipPayload(DataInputStream input, byte type) throws IOException {
+        switch (type) {
+            case NbtElement.BYTE_TYPE -> skipFully(input, 1);
+            case NbtElement.SHORT_TYPE -> skipFully(input, 2);
+            case NbtElement.INT_TYPE, NbtElement.FLOAT_TYPE -> skipFully(input, 4);
+            case NbtElement.LONG_TYPE, NbtElement.DOUBLE_TYPE -> skipFully(input, 8);
+            case NbtElement.BYTE_ARRAY_TYPE -> skipFully(input, input.readInt());
+            case NbtElement.INT_ARRAY_TYPE -> skipFully(input, input.readInt() * 4L);
+            case NbtElement.LONG_ARRAY_TYPE -> skipFully(input, input.readInt() * 8L);
+            case NbtElement.STRING_TYPE -> skipString(input);
+            case NbtElement.LIST_TYPE -> {
+                var elementType = input.readByte();
+                var length = input.readInt();
+                for (int i = 0; i < length; i++) {
+                    skipPayload(input, elementType);
+                }
+            }
+            case NbtElement.COMPOUND_TYPE -> {
+                byte entryType;
+                while ((entryType = input.readByte()) != NbtElement.END_TYPE) {
+                    skipString(input);
+                    skipPayload(input, entryType);
+                }
+            }
+            case NbtElement.END_TYPE -> {
+            }
+            default -> throw new IOException("Invalid NBT tag type " + type);
+        }
+    }
+
+    public static void skipString(DataInputStream input) throws IOException {
+        skipFully(input, input.readUnsignedShort());
+    }
+
+    public static void skipFully(DataInputStream input, long length) throws IOException {
+        while (length > 0) {
+            var skipped = input.skip(length);
+            if (skipped <= 0) {
+                if (input.read() < 0) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+}
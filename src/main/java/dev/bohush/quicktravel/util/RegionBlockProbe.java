@@ -0,0 +1,439 @@
+package dev.bohush.quicktravel.util;
+
+import it.unimi.dsi.fastutil.longs.Long2BooleanOpenHashMap;
+import net.minecraft.block.Block;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.WorldSavePath;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.registry.Registry;
+import net.minecraft.util.registry.RegistryKey;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.PalettedContainer;
+import net.minecraft.world.dimension.DimensionType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads a single block from an Anvil region file without loading the chunk.
+ * <p>
+ * The region file is memory-mapped and only the section containing the block is decoded.
+ * Results are cached per region file until its modification time changes.
+ * Chunks unloaded since the region file was last written may still wait in the chunk IO queue,
+ * those are read through the IO worker instead, which returns the queued save, and are not cached.
+ * <p>
+ * Meant for {@link EligibilityCheck}'s worker threads, the open regions are guarded by the class lock.
+ */
+public class RegionBlockProbe {
+    private static final int MAX_OPEN_REGIONS = 16;
+    private static final int SECTOR_SIZE = 4096;
+    private static final int COMPRESSION_GZIP = 1;
+    private static final int COMPRESSION_DEFLATE = 2;
+    private static final int COMPRESSION_NONE = 3;
+    // Block states of a section take a few kilobytes, this leaves plenty of room to go back to them
+    private static final int MAX_BLOCK_STATES_BYTES = 1 << 20;
+    // Saves still queued after this long are not worth waiting for
+    private static final long PENDING_SAVE_MILLIS = 60_000;
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final LinkedHashMap<Path, Region> regions = new LinkedHashMap<>(MAX_OPEN_REGIONS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Region> eldest) {
+            return size() > MAX_OPEN_REGIONS;
+        }
+    };
+    // Written on the server thread, read by the workers
+    private static final ConcurrentHashMap<UnloadedChunk, Long> unloadTimes = new ConcurrentHashMap<>();
+
+    /**
+     * Checks whether there is a bed or a respawn anchor at the position in the saved chunk, see {@link BedCache#isAnchorBlock}.
+     * Should only be used for chunks that are not loaded, loaded chunks may have unsaved changes.
+     */
+    public static synchronized boolean isAnchor(ServerWorld world, BlockPos pos) {
+        var chunkX = ChunkSectionPos.getSectionCoord(pos.getX());
+        var chunkZ = ChunkSectionPos.getSectionCoord(pos.getZ());
+        var regionDir = DimensionType.getSaveDirectory(world.getRegistryKey(), world.getServer().getSavePath(WorldSavePath.ROOT))
+            .resolve("region");
+        var path = regionDir.resolve("r." + (chunkX >> 5) + "." + (chunkZ >> 5) + ".mca");
+
+        try {
+            if (isSavePending(world, chunkX, chunkZ, path)) {
+                var chunk = world.getChunkManager().threadedAnvilChunkStorage.getNbt(new ChunkPos(chunkX, chunkZ));
+                var blockName = chunk == null ? null : readBlockName(chunk, pos);
+                return blockName != null && BedCache.isAnchorBlock(world, Registry.BLOCK.get(new Identifier(blockName)));
+            }
+
+            var region = getRegion(path);
+            if (region == null) {
+                return false;
+            }
+
+            var key = pos.asLong();
+            if (region.beds.containsKey(key)) {
+                return region.beds.get(key);
+            }
+
+            var blockName = readBlockName(region.buffer, chunkX, chunkZ, pos);
+            var isAnchor = blockName != null && BedCache.isAnchorBlock(world, Registry.BLOCK.get(new Identifier(blockName)));
+            region.beds.put(key, isAnchor);
+
+            return isAnchor;
+        } catch (Exception e) {
+            LOGGER.warn("Failed to read block at {} from {}", pos, path, e);
+            return false;
+        }
+    }
+
+    /**
+     * Remembers when a chunk was unloaded, its save is queued then, must be called from the server thread.
+     */
+    public static void onChunkUnloaded(ServerWorld world, ChunkPos chunkPos) {
+        unloadTimes.put(new UnloadedChunk(world.getRegistryKey(), chunkPos.toLong()), System.currentTimeMillis());
+    }
+
+    public static void tick(MinecraftServer server) {
+        if (server.getTicks() % 1200 == 0 && !unloadTimes.isEmpty()) {
+            var expired = System.currentTimeMillis() - PENDING_SAVE_MILLIS;
+            unloadTimes.values().removeIf(time -> time < expired);
+        }
+    }
+
+    public static synchronized void clear() {
+        regions.clear();
+        unloadTimes.clear();
+    }
+
+    /**
+     * Whether the chunk may have been unloaded after the region file was last written, so its save may still be queued.
+     */
+    private static boolean isSavePending(ServerWorld world, int chunkX, int chunkZ, Path path) throws IOException {
+        var unloadTime = unloadTimes.get(new UnloadedChunk(world.getRegistryKey(), ChunkPos.toLong(chunkX, chunkZ)));
+        if (unloadTime == null || unloadTime < System.currentTimeMillis() - PENDING_SAVE_MILLIS) {
+            return false;
+        }
+
+        return !Files.isRegularFile(path) || Files.getLastModifiedTime(path).toMillis() <= unloadTime;
+    }
+
+    @Nullable
+    private static Region getRegion(Path path) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            regions.remove(path);
+            return null;
+        }
+
+        var modifiedTime = Files.getLastModifiedTime(path).toMillis();
+        var region = regions.get(path);
+        if (region != null && region.modifiedTime == modifiedTime) {
+            return region;
+        }
+
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            region = new Region(modifiedTime, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        regions.put(path, region);
+
+        return region;
+    }
+
+    @Nullable
+    private static String readBlockName(MappedByteBuffer buffer, int chunkX, int chunkZ, BlockPos pos) throws IOException {
+        if (buffer.capacity() < SECTOR_SIZE) {
+            return null;
+        }
+
+        // Header: 3 bytes sector offset and 1 byte sector count per chunk
+        var location = buffer.getInt(4 * ((chunkX & 31) + (chunkZ & 31) * 32));
+        var offset = (long)(location >>> 8) * SECTOR_SIZE;
+        if (location == 0 || offset + 5 > buffer.capacity()) {
+            return null;
+        }
+
+        var length = buffer.getInt((int)offset) - 1;
+        var compression = buffer.get((int)offset + 4);
+        if (length <= 0 || offset + 5 + length > buffer.capacity()) {
+            // Oversized chunks are stored in separate files, they are not worth reading here
+            return null;
+        }
+
+        InputStream stream = new ByteBufferInputStream(buffer.slice((int)offset + 5, length));
+        stream = switch (compression) {
+            case COMPRESSION_GZIP -> new GZIPInputStream(stream);
+            case COMPRESSION_DEFLATE -> new InflaterInputStream(stream);
+            case COMPRESSION_NONE -> stream;
+            default -> null;
+        };
+        if (stream == null) {
+            return null;
+        }
+
+        try (var input = new DataInputStream(new BufferedInputStream(stream))) {
+            return readBlockName(input, pos);
+        }
+    }
+
+    /**
+     * Same as {@link #readBlockName(DataInputStream, BlockPos)} for chunk NBT that is already decoded.
+     */
+    @Nullable
+    private static String readBlockName(NbtCompound chunk, BlockPos pos) {
+        var sectionY = ChunkSectionPos.getSectionCoord(pos.getY());
+        for (var element : chunk.getList("sections", NbtElement.COMPOUND_TYPE)) {
+            var sectionNbt = (NbtCompound)element;
+            if (sectionNbt.getByte("Y") != sectionY) {
+                continue;
+            }
+
+            var section = new Section();
+            var blockStates = sectionNbt.getCompound("block_states");
+            for (var entry : blockStates.getList("palette", NbtElement.COMPOUND_TYPE)) {
+                section.palette.add(((NbtCompound)entry).getString("Name"));
+            }
+            if (blockStates.contains("data", NbtElement.LONG_ARRAY_TYPE)) {
+                section.data = blockStates.getLongArray("data");
+            }
+
+            return section.getBlockName(pos);
+        }
+
+        return null;
+    }
+
+    /**
+     * Walks the chunk NBT to the section of the block and reads its palette entry.
+     */
+    @Nullable
+    private static String readBlockName(DataInputStream input, BlockPos pos) throws IOException {
+        if (input.readByte() != NbtElement.COMPOUND_TYPE) {
+            return null;
+        }
+        NbtStreamUtil.skipString(input);
+
+        byte type;
+        while ((type = input.readByte()) != NbtElement.END_TYPE) {
+            var name = input.readUTF();
+            if (type != NbtElement.LIST_TYPE || !name.equals("sections")) {
+                NbtStreamUtil.skipPayload(input, type);
+                continue;
+            }
+
+            var elementType = input.readByte();
+            var count = input.readInt();
+            if (elementType != NbtElement.COMPOUND_TYPE) {
+                return null;
+            }
+
+            var sectionY = ChunkSectionPos.getSectionCoord(pos.getY());
+            for (int i = 0; i < count; i++) {
+                var section = readSection(input, sectionY);
+                if (section != null) {
+                    return section.getBlockName(pos);
+                }
+            }
+
+            return null;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return The section, or null if it is a different section.
+     */
+    @Nullable
+    private static Section readSection(DataInputStream input, int sectionY) throws IOException {
+        var y = Integer.MIN_VALUE;
+        var section = new Section();
+        var blockStatesSkipped = false;
+
+        byte type;
+        while ((type = input.readByte()) != NbtElement.END_TYPE) {
+            var name = input.readUTF();
+
+            // Skip the rest of other sections without decoding it
+            if (y != Integer.MIN_VALUE && y != sectionY) {
+                NbtStreamUtil.skipPayload(input, type);
+            } else if (type == NbtElement.BYTE_TYPE && name.equals("Y")) {
+                y = input.readByte();
+
+                // Go back to the block states skipped before Y, the tags after them are read again
+                if (y == sectionY && blockStatesSkipped) {
+                    input.reset();
+                    readBlockStates(input, section);
+                    blockStatesSkipped = false;
+                }
+            } else if (type == NbtElement.COMPOUND_TYPE && name.equals("block_states")) {
+                if (y == sectionY) {
+                    readBlockStates(input, section);
+                } else {
+                    // Y is not known yet, the block states are only decoded if the section turns out to be the right one
+                    input.mark(MAX_BLOCK_STATES_BYTES);
+                    NbtStreamUtil.skipPayload(input, type);
+                    blockStatesSkipped = true;
+                }
+            } else {
+                NbtStreamUtil.skipPayload(input, type);
+            }
+        }
+
+        return y == sectionY ? section : null;
+    }
+
+    private static void readBlockStates(DataInputStream input, Section section) throws IOException {
+        byte type;
+        while ((type = input.readByte()) != NbtElement.END_TYPE) {
+            var name = input.readUTF();
+
+            if (type == NbtElement.LIST_TYPE && name.equals("palette")) {
+                var elementType = input.readByte();
+                var count = input.readInt();
+                for (int i = 0; i < count; i++) {
+                    if (elementType == NbtElement.COMPOUND_TYPE) {
+                        section.palette.add(readPaletteEntry(input));
+                    } else {
+                        NbtStreamUtil.skipPayload(input, elementType);
+                    }
+                }
+            } else if (type == NbtElement.LONG_ARRAY_TYPE && name.equals("data")) {
+                var data = new long[input.readInt()];
+                for (int i = 0; i < data.length; i++) {
+                    data[i] = input.readLong();
+                }
+                section.data = data;
+            } else {
+                NbtStreamUtil.skipPayload(input, type);
+            }
+        }
+    }
+
+    @Nullable
+    private static String readPaletteEntry(DataInputStream input) throws IOException {
+        String blockName = null;
+
+        byte type;
+        while ((type = input.readByte()) != NbtElement.END_TYPE) {
+            var name = input.readUTF();
+            if (type == NbtElement.STRING_TYPE && name.equals("Name")) {
+                blockName = input.readUTF();
+            } else {
+                NbtStreamUtil.skipPayload(input, type);
+            }
+        }
+
+        return blockName;
+    }
+
+    private static class Region {
+        private final long modifiedTime;
+        private final MappedByteBuffer buffer;
+        private final Long2BooleanOpenHashMap beds = new Long2BooleanOpenHashMap();
+
+        private Region(long modifiedTime, MappedByteBuffer buffer) {
+            this.modifiedTime = modifiedTime;
+            this.buffer = buffer;
+        }
+    }
+
+    private static class Section {
+        private final ArrayList<String> palette = new ArrayList<>();
+        @Nullable
+        private long[] data;
+
+        @Nullable
+        private String getBlockName(BlockPos pos) {
+            if (palette.isEmpty()) {
+                return null;
+            }
+            if (palette.size() == 1 || data == null) {
+                return palette.get(0);
+            }
+
+            // Same bit width as the chunk was saved with, entries never span two longs
+            var bits = PalettedContainer.PaletteProvider.BLOCK_STATE.getBits(Block.STATE_IDS, palette.size());
+            var entriesPerLong = 64 / bits;
+            var index = ((pos.getY() & 15) << 8) | ((pos.getZ() & 15) << 4) | (pos.getX() & 15);
+            var longIndex = index / entriesPerLong;
+            if (longIndex >= data.length) {
+                return null;
+            }
+
+            var paletteIndex = (int)((data[longIndex] >>> ((index % entriesPerLong) * bits)) & ((1L << bits) - 1));
+            return paletteIndex < palette.size() ? palette.get(paletteIndex) : null;
+        }
+    }
+
+    private static class UnloadedChunk {
+        private final RegistryKey<World> dimension;
+        private final long chunkPos;
+
+        private UnloadedChunk(RegistryKey<World> dimension, long chunkPos) {
+            this.dimension = dimension;
+            this.chunkPos = chunkPos;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof UnloadedChunk other)) {
+                return false;
+            }
+            return dimension == other.dimension && chunkPos == other.chunkPos;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(dimension, chunkPos);
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+
+            length = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, length);
+            return length;
+        }
+    }
+}
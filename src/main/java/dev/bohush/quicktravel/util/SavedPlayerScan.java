@@ -0,0 +1,56 @@
+package dev.bohush.quicktravel.util;
+
+import dev.bohush.quicktravel.config.ModConfig;
+import net.minecraft.util.math.GlobalPos;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Reads saved player files on a small pool of I/O threads.
+ * <p>
+ * Every file is read and decompressed independently, so they are spread over at most {@link ModConfig#scanThreads}
+ * threads instead of being read one by one. The cap keeps a large player data folder from saturating the disk
+ * and the CPU the server thread needs.
+ */
+public class SavedPlayerScan {
+    private static final ForkJoinPool pool = new ForkJoinPool(
+        Math.max(1, ModConfig.scanThreads),
+        pool -> {
+            var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("Quick Travel I/O #" + thread.getPoolIndex());
+            return thread;
+        },
+        null,
+        false
+    );
+
+    /**
+     * Runs a task on the scan pool, e.g. a whole scan that should not block the server thread.
+     */
+    public static CompletableFuture<Void> runAsync(Runnable task) {
+        return CompletableFuture.runAsync(task, pool);
+    }
+
+    /**
+     * Reads spawn points of the players in parallel and waits for all of them.
+     * @return Spawn points in the order of the players, null where the player has none.
+     */
+    public static GlobalPos[] readAll(List<String> playerUuids, File playerDataDir) {
+        var spawnPoints = new GlobalPos[playerUuids.size()];
+        if (spawnPoints.length == 0) {
+            return spawnPoints;
+        }
+
+        // Parallel streams started from within the pool stay on its threads
+        pool.submit(() -> IntStream.range(0, spawnPoints.length)
+            .parallel()
+            .forEach(i -> spawnPoints[i] = TeleportUtil.getSpawnPointFromSavedPlayer(playerUuids.get(i), playerDataDir))
+        ).join();
+
+        return spawnPoints;
+    }
+}
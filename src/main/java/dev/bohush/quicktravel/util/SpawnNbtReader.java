@@ -0,0 +1,125 @@
+package dev.bohush.quicktravel.util;
+
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.util.math.BlockPos;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads only the spawn point fields from a compressed player data file.
+ * <p>
+ * Unlike {@link net.minecraft.nbt.NbtIo#readCompressed(File)} it does not build the NBT tree,
+ * every other tag is skipped without being allocated and reading stops once all spawn fields were found.
+ */
+public class SpawnNbtReader {
+    private static final byte[] SPAWN_X = "SpawnX".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SPAWN_Y = "SpawnY".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SPAWN_Z = "SpawnZ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SPAWN_DIMENSION = "SpawnDimension".getBytes(StandardCharsets.UTF_8);
+
+    private static final int FOUND_X = 1;
+    private static final int FOUND_Y = 2;
+    private static final int FOUND_Z = 4;
+    private static final int FOUND_DIMENSION = 8;
+    private static final int FOUND_POSITION = FOUND_X | FOUND_Y | FOUND_Z;
+    private static final int FOUND_ALL = FOUND_POSITION | FOUND_DIMENSION;
+
+    private final byte[] nameBuffer = new byte[SPAWN_DIMENSION.length];
+
+    private int found;
+    private int x;
+    private int y;
+    private int z;
+    @Nullable
+    private String dimension;
+
+    public static SpawnNbtReader read(File file) throws IOException {
+        try (var stream = new FileInputStream(file)) {
+            return readCompressed(stream);
+        }
+    }
+
+    public static SpawnNbtReader readCompressed(InputStream stream) throws IOException {
+        var reader = new SpawnNbtReader();
+        reader.readRoot(new DataInputStream(new BufferedInputStream(new GZIPInputStream(stream))));
+        return reader;
+    }
+
+    public boolean hasSpawnPosition() {
+        return (found & FOUND_POSITION) == FOUND_POSITION;
+    }
+
+    @Nullable
+    public BlockPos getSpawnPosition() {
+        return hasSpawnPosition() ? new BlockPos(x, y, z) : null;
+    }
+
+    /**
+     * @return Identifier of the spawn dimension, or null if the file does not specify it.
+     */
+    @Nullable
+    public String getSpawnDimension() {
+        return dimension;
+    }
+
+    private void readRoot(DataInputStream input) throws IOException {
+        if (input.readByte() != NbtElement.COMPOUND_TYPE) {
+            return;
+        }
+        NbtStreamUtil.skipString(input);
+
+        while (found != FOUND_ALL) {
+            var type = input.readByte();
+            if (type == NbtElement.END_TYPE) {
+                return;
+            }
+
+            var nameLength = input.readUnsignedShort();
+            if (nameLength > nameBuffer.length) {
+                NbtStreamUtil.skipFully(input, nameLength);
+                NbtStreamUtil.skipPayload(input, type);
+                continue;
+            }
+
+            input.readFully(nameBuffer, 0, nameLength);
+
+            if (type == NbtElement.INT_TYPE && nameEquals(SPAWN_X, nameLength)) {
+                x = input.readInt();
+                found |= FOUND_X;
+            } else if (type == NbtElement.INT_TYPE && nameEquals(SPAWN_Y, nameLength)) {
+                y = input.readInt();
+                found |= FOUND_Y;
+            } else if (type == NbtElement.INT_TYPE && nameEquals(SPAWN_Z, nameLength)) {
+                z = input.readInt();
+                found |= FOUND_Z;
+            } else if (type == NbtElement.STRING_TYPE && nameEquals(SPAWN_DIMENSION, nameLength)) {
+                dimension = input.readUTF();
+                found |= FOUND_DIMENSION;
+            } else {
+                NbtStreamUtil.skipPayload(input, type);
+            }
+        }
+    }
+
+    private boolean nameEquals(byte[] name, int length) {
+        if (name.length != length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (nameBuffer[i] != name[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
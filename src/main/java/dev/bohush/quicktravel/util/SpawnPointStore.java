@@ -0,0 +1,326 @@
+package dev.bohush.quicktravel.util;
+
+import dev.bohush.quicktravel.mixin.MinecraftServerAccessor;
+import dev.bohush.quicktravel.mixin.WorldSaveHandlerAccessor;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.WorldSavePath;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.GlobalPos;
+import net.minecraft.util.registry.RegistryKey;
+import net.minecraft.world.World;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Binary file in the world folder with the spawn point of every saved player, keyed by UUID.
+ * <p>
+ * The file is read and written through a {@link FileChannel}, not memory-mapped: the records are read once when the server starts
+ * and a mapping would keep the file from being truncated on Windows when the store has to be rebuilt.
+ * <p>
+ * Every record remembers the modification time of the player data file it was read from,
+ * so only player files that changed since the last run (or were edited externally) have to be decompressed.
+ * Records are fixed-size and are updated in place whenever the game saves player data.
+ * The dimension of a spawn point is stored as a hash of its identifier, and resolved against the server's dimensions when read.
+ */
+public class SpawnPointStore {
+    private static final String FILE_NAME = "quick-travel-spawns.bin";
+    private static final int MAGIC = 0x51545350; // "QTSP"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 48;
+    private static final int FLAG_HAS_SPAWN = 1;
+    private static final int RECORDS_PER_READ = 1024;
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    // Guarded by the class lock, the store is opened off the server thread
+    private static final HashMap<UUID, Integer> slots = new HashMap<>();
+    private static final HashMap<UUID, Long> modifiedTimes = new HashMap<>();
+    private static final ByteBuffer recordBuffer = ByteBuffer.allocate(RECORD_SIZE);
+
+    @Nullable
+    private static FileChannel channel;
+    // Set when the server stops, so an open still running on the SavedPlayerScan pool does not open the file again
+    private static boolean closed = true;
+
+    /**
+     * Allows {@link #open} again after {@link #close}, must be called from the server thread before open is scheduled.
+     */
+    public static synchronized void prepareOpen() {
+        closed = false;
+    }
+
+    /**
+     * Opens the store of the server's world, brings it up to date with the player data directory
+     * and reports the spawn point of every saved player.
+     * <p>
+     * Can be called off the server thread, the store is only locked while records are read and written,
+     * not while the changed player files are being read. Does nothing once {@link #close} has been called.
+     */
+    public static void open(MinecraftServer server, SpawnPointConsumer consumer) {
+        var saveHandler = ((MinecraftServerAccessor)server).getSaveHandler();
+        var playerDataDir = ((WorldSaveHandlerAccessor)saveHandler).getPlayerDataDir();
+        var path = server.getSavePath(WorldSavePath.ROOT).resolve(FILE_NAME);
+        var spawnPoints = new HashMap<UUID, GlobalPos>();
+        var dimensions = new HashMap<Long, RegistryKey<World>>();
+        for (var dimension : server.getWorldRegistryKeys()) {
+            dimensions.put(getDimensionId(dimension), dimension);
+        }
+        HashMap<UUID, Long> storedTimes;
+
+        synchronized (SpawnPointStore.class) {
+            if (closed) {
+                return;
+            }
+            closeChannel();
+
+            try {
+                channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                if (!readRecords(spawnPoints, dimensions)) {
+                    LOGGER.info("Rebuilding spawn point store {}", path);
+                    channel.truncate(0);
+                    slots.clear();
+                    modifiedTimes.clear();
+                    spawnPoints.clear();
+                    writeHeader();
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Failed to open spawn point store {}, falling back to player data files", path, e);
+                closeChannel();
+            }
+
+            storedTimes = new HashMap<>(modifiedTimes);
+        }
+
+        // Find player files that changed since they were stored
+        var savedPlayers = new HashSet<UUID>();
+        var changedPlayers = new ArrayList<UUID>();
+        var changedFiles = new ArrayList<String>();
+        var changedTimes = new LongArrayList();
+        for (var savedPlayerUuid : saveHandler.getSavedPlayerIds()) {
+            UUID playerUuid;
+            try {
+                playerUuid = UUID.fromString(savedPlayerUuid);
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            savedPlayers.add(playerUuid);
+
+            var modifiedTime = new File(playerDataDir, savedPlayerUuid + ".dat").lastModified();
+            var storedTime = storedTimes.get(playerUuid);
+            if (storedTime != null && storedTime == modifiedTime) {
+                continue;
+            }
+
+            changedPlayers.add(playerUuid);
+            changedFiles.add(savedPlayerUuid);
+            changedTimes.add(modifiedTime);
+        }
+
+        var changedSpawnPoints = SavedPlayerScan.readAll(changedFiles, playerDataDir);
+
+        synchronized (SpawnPointStore.class) {
+            // The server has been stopped while the files were being read
+            if (closed) {
+                return;
+            }
+
+            for (int i = 0; i < changedPlayers.size(); i++) {
+                var playerUuid = changedPlayers.get(i);
+                spawnPoints.put(playerUuid, changedSpawnPoints[i]);
+
+                // Keep the record if the game has saved the player while the files were being read
+                if (Objects.equals(modifiedTimes.get(playerUuid), storedTimes.get(playerUuid))) {
+                    write(playerUuid, changedSpawnPoints[i], changedTimes.getLong(i));
+                }
+            }
+
+            // Forget players whose data file was removed, players saved in the meantime are new
+            for (var playerUuid : storedTimes.keySet()) {
+                if (!savedPlayers.contains(playerUuid) && Objects.equals(modifiedTimes.get(playerUuid), storedTimes.get(playerUuid))) {
+                    spawnPoints.remove(playerUuid);
+                    write(playerUuid, null, 0);
+                }
+            }
+        }
+
+        spawnPoints.forEach(consumer::accept);
+    }
+
+    /**
+     * Stores the spawn point of a player whose data file has just been written.
+     */
+    public static synchronized void update(UUID playerUuid, @Nullable GlobalPos spawnPoint, File playerDataFile) {
+        write(playerUuid, spawnPoint, playerDataFile.lastModified());
+    }
+
+    /**
+     * Closes the store when the server stops, an open that is still running stops without reopening it.
+     */
+    public static synchronized void close() {
+        closed = true;
+        closeChannel();
+    }
+
+    private static void closeChannel() {
+        slots.clear();
+        modifiedTimes.clear();
+
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close spawn point store", e);
+        }
+        channel = null;
+    }
+
+    /**
+     * @return False if the file is empty or not a valid store.
+     */
+    private static boolean readRecords(HashMap<UUID, GlobalPos> spawnPoints, HashMap<Long, RegistryKey<World>> dimensions) throws IOException {
+        var size = channel.size();
+        if (size < HEADER_SIZE) {
+            return false;
+        }
+
+        var header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            return false;
+        }
+
+        var count = header.getInt();
+        if (HEADER_SIZE + (long)count * RECORD_SIZE > size) {
+            return false;
+        }
+
+        var buffer = ByteBuffer.allocate(RECORDS_PER_READ * RECORD_SIZE);
+        for (int slot = 0; slot < count; slot++) {
+            if (slot % RECORDS_PER_READ == 0) {
+                buffer.clear().limit(Math.min(RECORDS_PER_READ, count - slot) * RECORD_SIZE);
+                readFully(buffer, HEADER_SIZE + (long)slot * RECORD_SIZE);
+            }
+
+            var playerUuid = new UUID(buffer.getLong(), buffer.getLong());
+            var modifiedTime = buffer.getLong();
+            var dimension = dimensions.get(buffer.getLong());
+            var x = buffer.getInt();
+            var y = buffer.getInt();
+            var z = buffer.getInt();
+            var flags = buffer.getInt();
+
+            slots.put(playerUuid, slot);
+            if (modifiedTime != 0) {
+                modifiedTimes.put(playerUuid, modifiedTime);
+            }
+            // Spawn points in dimensions that no longer exist are ignored, but kept in case the dimension comes back
+            if ((flags & FLAG_HAS_SPAWN) != 0 && dimension != null) {
+                spawnPoints.put(playerUuid, GlobalPos.create(dimension, new BlockPos(x, y, z)));
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Fills the buffer from the position in the file and flips it.
+     */
+    private static void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Spawn point store ends early");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void writeHeader() throws IOException {
+        var header = ByteBuffer.allocate(HEADER_SIZE)
+            .putInt(MAGIC)
+            .putInt(VERSION)
+            .putInt(slots.size())
+            .putInt(0)
+            .flip();
+        channel.write(header, 0);
+    }
+
+    /**
+     * Writes a single record in place, appending it if the player is not in the store yet.
+     * A modified time of 0 means the player data file does not exist.
+     */
+    private static void write(UUID playerUuid, @Nullable GlobalPos spawnPoint, long modifiedTime) {
+        if (modifiedTime == 0) {
+            modifiedTimes.remove(playerUuid);
+        } else {
+            modifiedTimes.put(playerUuid, modifiedTime);
+        }
+
+        if (channel == null) {
+            return;
+        }
+
+        var slot = slots.get(playerUuid);
+        var append = slot == null;
+        if (append) {
+            slot = slots.size();
+            slots.put(playerUuid, slot);
+        }
+
+        recordBuffer.clear()
+            .putLong(playerUuid.getMostSignificantBits())
+            .putLong(playerUuid.getLeastSignificantBits())
+            .putLong(modifiedTime)
+            .putLong(spawnPoint == null ? 0 : getDimensionId(spawnPoint.getDimension()))
+            .putInt(spawnPoint == null ? 0 : spawnPoint.getPos().getX())
+            .putInt(spawnPoint == null ? 0 : spawnPoint.getPos().getY())
+            .putInt(spawnPoint == null ? 0 : spawnPoint.getPos().getZ())
+            .putInt(spawnPoint == null ? 0 : FLAG_HAS_SPAWN)
+            .flip();
+
+        try {
+            channel.write(recordBuffer, HEADER_SIZE + (long)slot * RECORD_SIZE);
+            if (append) {
+                writeHeader();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write spawn point of {}, the store will be rebuilt on next start", playerUuid, e);
+            closeChannel();
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the dimension identifier, stable across runs unlike the registry key itself.
+     */
+    private static long getDimensionId(RegistryKey<World> dimension) {
+        var name = dimension.getValue().toString();
+        var hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= name.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        return hash;
+    }
+
+    public interface SpawnPointConsumer {
+        void accept(UUID playerUuid, @Nullable GlobalPos spawnPoint);
+    }
+}
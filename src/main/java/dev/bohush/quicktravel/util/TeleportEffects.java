@@ -0,0 +1,172 @@
+package dev.bohush.quicktravel.util;
+
+import dev.bohush.quicktravel.config.ModConfig;
+import net.minecraft.network.packet.s2c.play.PlaySoundS2CPacket;
+import net.minecraft.particle.ParticleTypes;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.sound.SoundCategory;
+import net.minecraft.sound.SoundEvents;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Vec3d;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+/**
+ * Particles and sounds of teleports, sent once per tick instead of broadcast by every teleport.
+ * <p>
+ * Effects at the same block in the same tick are merged into one. Every viewer gets fewer particles the farther
+ * away they are and the more viewers share the effect, since bursts in a crowd overlap anyway.
+ * At most {@link ModConfig#maxEffectPacketsPerTick} packets are sent per tick, the rest of the effects are dropped.
+ * Must only be used from the server thread.
+ */
+public class TeleportEffects {
+    private static final double PARTICLE_RANGE = 32;
+    private static final double SOUND_RANGE = 16;
+    private static final int MAX_PARTICLES = 32;
+    private static final int MIN_PARTICLES = 4;
+
+    private static final LinkedHashMap<EffectKey, Effect> pending = new LinkedHashMap<>();
+    private static final ArrayList<ServerPlayerEntity> viewers = new ArrayList<>();
+
+    /**
+     * Queues the effects of a teleport.
+     * @param origin Where the player is teleporting <b>from</b>.
+     * @param target Where the player is teleporting <b>to</b>.
+     */
+    public static void addTeleport(ServerWorld world, Vec3d origin, Vec3d target) {
+        add(world, origin, false);
+        add(world, target, true);
+    }
+
+    public static void tick(MinecraftServer server) {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        var budget = ModConfig.maxEffectPacketsPerTick > 0 ? ModConfig.maxEffectPacketsPerTick : Integer.MAX_VALUE;
+        for (var effect : pending.values()) {
+            budget = send(effect, budget);
+        }
+
+        pending.clear();
+    }
+
+    public static void clear() {
+        pending.clear();
+    }
+
+    private static void add(ServerWorld world, Vec3d pos, boolean arrival) {
+        if (!ModConfig.teleportEffects) {
+            return;
+        }
+
+        var key = new EffectKey(world, new BlockPos(pos), arrival);
+        var effect = pending.get(key);
+        if (effect == null) {
+            pending.put(key, new Effect(world, pos, arrival));
+        } else {
+            Metrics.EFFECTS_MERGED.increment();
+        }
+    }
+
+    /**
+     * @return Remaining packet budget.
+     */
+    private static int send(Effect effect, int budget) {
+        var x = effect.pos.getX();
+        var y = effect.pos.getY() + 1;
+        var z = effect.pos.getZ();
+
+        viewers.clear();
+        for (var player : effect.world.getPlayers()) {
+            if (player.squaredDistanceTo(x, y, z) < PARTICLE_RANGE * PARTICLE_RANGE) {
+                viewers.add(player);
+            }
+        }
+
+        var particle = effect.arrival ? ParticleTypes.PORTAL : ParticleTypes.POOF;
+        var speed = effect.arrival ? 1 : 0.2;
+        var crowdFactor = 1 / Math.sqrt(viewers.size());
+
+        for (var viewer : viewers) {
+            var distanceSquared = viewer.squaredDistanceTo(x, y, z);
+
+            if (budget > 0) {
+                var distanceFactor = 1 - Math.sqrt(distanceSquared) / PARTICLE_RANGE;
+                var count = Math.max(MIN_PARTICLES, (int)Math.round(MAX_PARTICLES * distanceFactor * crowdFactor));
+                effect.world.spawnParticles(viewer, particle, false, x, y, z, count, 0, 0.5, 0, speed);
+                Metrics.EFFECT_PACKETS.increment();
+                budget--;
+            } else {
+                Metrics.EFFECT_PACKETS_DROPPED.increment();
+            }
+
+            if (distanceSquared >= SOUND_RANGE * SOUND_RANGE) {
+                continue;
+            }
+
+            if (budget > 0) {
+                viewer.networkHandler.sendPacket(new PlaySoundS2CPacket(
+                    SoundEvents.ENTITY_ENDERMAN_TELEPORT,
+                    SoundCategory.PLAYERS,
+                    x,
+                    y - 1,
+                    z,
+                    1,
+                    1
+                ));
+                Metrics.EFFECT_PACKETS.increment();
+                budget--;
+            } else {
+                Metrics.EFFECT_PACKETS_DROPPED.increment();
+            }
+        }
+
+        viewers.clear();
+        return budget;
+    }
+
+    private static class EffectKey {
+        private final ServerWorld world;
+        private final BlockPos pos;
+        private final boolean arrival;
+
+        private EffectKey(ServerWorld world, BlockPos pos, boolean arrival) {
+            this.world = world;
+            this.pos = pos;
+            this.arrival = arrival;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof EffectKey other)) {
+                return false;
+            }
+            return world == other.world && arrival == other.arrival && pos.equals(other.pos);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(world.getRegistryKey(), pos, arrival);
+        }
+    }
+
+    private static class Effect {
+        private final ServerWorld world;
+        private final Vec3d pos;
+        private final boolean arrival;
+
+        private Effect(ServerWorld world, Vec3d pos, boolean arrival) {
+            this.world = world;
+            this.pos = pos;
+            this.arrival = arrival;
+        }
+    }
+}
@@ -1,100 +1,232 @@
 package dev.bohush.quicktravel.util;
 
+import dev.bohush.quicktravel.jfr.TeleportRequestEvent;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
 import net.minecraft.text.LiteralText;
 import net.minecraft.util.Formatting;
+import net.minecraft.util.math.BlockPos;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.UUID;
 
 public class TeleportRequest {
     public static final long TIMEOUT_SECONDS = 120;
-    private static final ArrayList<TeleportRequest> cache = new ArrayList<>();
-
-    private final ServerPlayerEntity requester;
-    private final ServerPlayerEntity target;
-
-    private TeleportRequest(ServerPlayerEntity requester, ServerPlayerEntity target) {
-        this.requester = requester;
-        this.target = target;
+    private static final HashMap<UUID, TeleportRequest> byRequester = new HashMap<>();
+    private static final HashMap<UUID, LinkedHashMap<UUID, TeleportRequest>> byTarget = new HashMap<>();
+    private static final TimingWheel timeouts = new TimingWheel(512);
+
+    // Players are looked up by UUID, so the request does not keep disconnected or respawned player entities alive
+    private final MinecraftServer server;
+    private final UUID requesterUuid;
+    private final UUID targetUuid;
+    private final String requesterName;
+    private final String targetName;
+    private TimingWheel.Timeout timeout;
+    // Target's home kept loaded while the request is pending
+    @Nullable
+    private ServerWorld homeWorld;
+    @Nullable
+    private BlockPos homePos;
+
+    private TeleportRequest(MinecraftServer server, UUID requesterUuid, String requesterName, UUID targetUuid, String targetName) {
+        this.server = server;
+        this.requesterUuid = requesterUuid;
+        this.requesterName = requesterName;
+        this.targetUuid = targetUuid;
+        this.targetName = targetName;
     }
 
+    @Nullable
     public ServerPlayerEntity getRequester() {
-        return requester;
+        return server.getPlayerManager().getPlayer(requesterUuid);
     }
 
+    @Nullable
     public ServerPlayerEntity getTarget() {
-        return target;
+        return server.getPlayerManager().getPlayer(targetUuid);
     }
 
     public void respond(String message) {
-        requester.sendMessage(new LiteralText(message), false);
+        var requester = getRequester();
+        if (requester != null) {
+            requester.sendMessage(new LiteralText(message), false);
+        }
     }
 
     public void respondError(String errorMessage) {
+        var requester = getRequester();
+        if (requester == null) {
+            return;
+        }
+
         requester.sendMessage(
-            new LiteralText("Teleport to " + target.getEntityName() + " has failed: ")
+            new LiteralText("Teleport to " + targetName + " has failed: ")
                 .append(errorMessage)
                 .formatted(Formatting.RED),
             false
         );
     }
 
+    public static boolean hasPending(ServerPlayerEntity requester) {
+        return byRequester.containsKey(requester.getUuid());
+    }
+
     public static boolean create(ServerPlayerEntity requester, ServerPlayerEntity target, RequestTimedOutCallback callback) {
-        var request = new TeleportRequest(requester, target);
+        var server = requester.getServer();
+        if (!create(server, requester.getUuid(), requester.getEntityName(), target.getUuid(), target.getEntityName(), callback)) {
+            return false;
+        }
+
+        // Load the target's home in the background while the request waits to be accepted
+        var homePos = target.getSpawnPointPosition();
+        var homeWorld = server.getWorld(target.getSpawnPointDimension());
+        if (homePos != null && homeWorld != null) {
+            var request = byRequester.get(requester.getUuid());
+            request.homeWorld = homeWorld;
+            request.homePos = homePos;
+            ChunkPrewarmer.warmForRequest(homeWorld, homePos, request.requesterUuid);
+        }
+
+        return true;
+    }
 
+    static boolean create(MinecraftServer server, UUID requesterUuid, String requesterName, UUID targetUuid, String targetName, RequestTimedOutCallback callback) {
         // Only one request per player
-        if (cache.stream().anyMatch(r -> r.getRequester() == requester)) {
+        if (byRequester.containsKey(requesterUuid)) {
             return false;
         }
 
-        cache.add(request);
+        var request = new TeleportRequest(server, requesterUuid, requesterName, targetUuid, targetName);
+        byRequester.put(request.requesterUuid, request);
+        byTarget.computeIfAbsent(request.targetUuid, uuid -> new LinkedHashMap<>()).put(request.requesterUuid, request);
         scheduleTimeout(request, callback);
+        Metrics.REQUESTS_CREATED.increment();
+        request.commitEvent(TeleportRequestEvent.CREATE);
 
         return true;
     }
 
     public static List<TeleportRequest> finish(@Nullable ServerPlayerEntity requester, ServerPlayerEntity target) {
+        return finish(requester == null ? null : requester.getUuid(), target.getUuid());
+    }
+
+    static List<TeleportRequest> finish(@Nullable UUID requesterUuid, UUID targetUuid) {
         var result = new ArrayList<TeleportRequest>();
 
-        for (int i = cache.size() - 1; i >= 0; i--) {
-            var request = cache.get(i);
+        var requests = byTarget.get(targetUuid);
+        if (requests == null) {
+            return result;
+        }
 
-            if (request.getTarget() == target && (requester == null || request.getRequester() == requester)) {
+        if (requesterUuid == null) {
+            result.addAll(requests.values());
+        } else {
+            var request = requests.get(requesterUuid);
+            if (request != null) {
                 result.add(request);
-                cache.remove(request);
             }
         }
 
+        for (var request : result) {
+            remove(request);
+            request.commitEvent(TeleportRequestEvent.FINISH);
+        }
+
         return result;
     }
 
     public static List<String> suggestPlayers(ServerPlayerEntity target) {
+        return suggestPlayers(target.getUuid());
+    }
+
+    static List<String> suggestPlayers(UUID targetUuid) {
         var result = new ArrayList<String>();
 
-        for (var request : cache) {
-            if (request.target == target) {
-                result.add(request.requester.getEntityName());
-            }
+        var requests = byTarget.get(targetUuid);
+        if (requests == null) {
+            return result;
+        }
+
+        for (var request : requests.values()) {
+            result.add(request.requesterName);
         }
 
         return result;
     }
 
-    private static void scheduleTimeout(TeleportRequest request, RequestTimedOutCallback callback) {
-        var timer = new Timer();
-        timer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                if (cache.contains(request)) {
-                    cache.remove(request);
-                    callback.RequestTimedOut();
-                }
+    public static int getPendingCount() {
+        return byRequester.size();
+    }
+
+    /**
+     * Cancels all requests from and to a player that is leaving the server.
+     */
+    public static void removePlayer(ServerPlayerEntity player) {
+        var ownRequest = byRequester.get(player.getUuid());
+        if (ownRequest != null) {
+            remove(ownRequest);
+        }
+
+        var requests = byTarget.get(player.getUuid());
+        if (requests == null) {
+            return;
+        }
+
+        for (var request : new ArrayList<>(requests.values())) {
+            remove(request);
+            request.respondError("The player has left the game.");
+        }
+    }
+
+    /**
+     * Advances request timeouts, must be called once every server tick.
+     */
+    public static void tick() {
+        timeouts.advance();
+    }
+
+    private void commitEvent(String action) {
+        var event = new TeleportRequestEvent();
+        if (event.shouldCommit()) {
+            event.action = action;
+            event.requester = requesterName;
+            event.target = targetName;
+            event.pending = byRequester.size();
+            event.commit();
+        }
+    }
+
+    private static void remove(TeleportRequest request) {
+        byRequester.remove(request.requesterUuid);
+
+        var requests = byTarget.get(request.targetUuid);
+        if (requests != null) {
+            requests.remove(request.requesterUuid);
+            if (requests.isEmpty()) {
+                byTarget.remove(request.targetUuid);
             }
-        }, TIMEOUT_SECONDS * 1000);
+        }
+
+        request.timeout.cancel();
+
+        if (request.homeWorld != null && request.homePos != null) {
+            ChunkPrewarmer.releaseRequest(request.homeWorld, request.homePos, request.requesterUuid);
+        }
+    }
+
+    private static void scheduleTimeout(TeleportRequest request, RequestTimedOutCallback callback) {
+        request.timeout = timeouts.schedule(TIMEOUT_SECONDS * 20, () -> {
+            remove(request);
+            Metrics.REQUESTS_TIMED_OUT.increment();
+            request.commitEvent(TeleportRequestEvent.EXPIRE);
+            callback.RequestTimedOut();
+        });
     }
 
     public interface RequestTimedOutCallback {
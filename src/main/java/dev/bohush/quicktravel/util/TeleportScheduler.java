@@ -0,0 +1,151 @@
+package dev.bohush.quicktravel.util;
+
+import dev.bohush.quicktravel.config.ModConfig;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Vec3d;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Runs teleports within a per-tick budget, so a mass {@code /tpaccept} is spread over several ticks.
+ * <p>
+ * Every tick runs at most {@link ModConfig#teleportsPerTick} teleports and stops early once
+ * {@link ModConfig#teleportBudgetMicros} are spent, but always runs at least one.
+ * Teleports are queued per destination and destinations take turns, so one popular player does not hold up the others.
+ * Teleports to the same destination in the same tick share the chunk ticket and the arrival effects.
+ * Must only be used from the server thread.
+ */
+public class TeleportScheduler {
+    private static final HashMap<DestinationKey, Destination> destinations = new HashMap<>();
+    private static final ArrayDeque<Destination> turns = new ArrayDeque<>();
+    private static int queued;
+    private static int maxQueued;
+
+    /**
+     * Queues a teleport, it is skipped if the player leaves the world in the meantime.
+     * @param chunkWaitNanos How long the teleport already waited for the destination chunk.
+     */
+    public static void schedule(ServerWorld world, UUID playerUuid, Vec3d target, long chunkWaitNanos) {
+        var key = new DestinationKey(world, new BlockPos(target));
+        var destination = destinations.get(key);
+        if (destination == null) {
+            destination = new Destination(key, world);
+            destinations.put(key, destination);
+            turns.add(destination);
+        }
+
+        destination.teleports.add(new QueuedTeleport(playerUuid, target, chunkWaitNanos, System.nanoTime()));
+        queued++;
+        maxQueued = Math.max(maxQueued, queued);
+    }
+
+    public static void tick(MinecraftServer server) {
+        if (turns.isEmpty()) {
+            return;
+        }
+
+        var start = System.nanoTime();
+        var budgetNanos = ModConfig.teleportBudgetMicros * 1000L;
+        var teleports = 0;
+
+        while (!turns.isEmpty() && teleports < ModConfig.teleportsPerTick) {
+            if (teleports > 0 && System.nanoTime() - start >= budgetNanos) {
+                break;
+            }
+
+            var destination = turns.poll();
+            var teleport = destination.teleports.poll();
+            queued--;
+
+            if (destination.teleports.isEmpty()) {
+                destinations.remove(destination.key);
+            } else {
+                turns.add(destination);
+            }
+
+            var world = destination.world;
+            var player = server.getPlayerManager().getPlayer(teleport.playerUuid);
+            if (player == null || player.world != world) {
+                continue;
+            }
+
+            var firstToDestination = destination.lastTick != server.getTicks();
+            destination.lastTick = server.getTicks();
+
+            Metrics.TELEPORT_QUEUE_WAIT.recordSince(teleport.queuedNanos);
+            TeleportUtil.teleportPlayer(world, player, teleport.target, teleport.chunkWaitNanos, System.nanoTime() - teleport.queuedNanos, firstToDestination);
+            teleports++;
+        }
+    }
+
+    public static int getQueuedCount() {
+        return queued;
+    }
+
+    public static int getMaxQueuedCount() {
+        return maxQueued;
+    }
+
+    public static void clear() {
+        destinations.clear();
+        turns.clear();
+        queued = 0;
+    }
+
+    private static class DestinationKey {
+        private final ServerWorld world;
+        private final BlockPos pos;
+
+        private DestinationKey(ServerWorld world, BlockPos pos) {
+            this.world = world;
+            this.pos = pos;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof DestinationKey other)) {
+                return false;
+            }
+            return world == other.world && pos.equals(other.pos);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(world.getRegistryKey(), pos);
+        }
+    }
+
+    private static class Destination {
+        private final DestinationKey key;
+        private final ServerWorld world;
+        private final ArrayDeque<QueuedTeleport> teleports = new ArrayDeque<>();
+        private int lastTick = -1;
+
+        private Destination(DestinationKey key, ServerWorld world) {
+            this.key = key;
+            this.world = world;
+        }
+    }
+
+    private static class QueuedTeleport {
+        private final UUID playerUuid;
+        private final Vec3d target;
+        private final long chunkWaitNanos;
+        private final long queuedNanos;
+
+        private QueuedTeleport(UUID playerUuid, Vec3d target, long chunkWaitNanos, long queuedNanos) {
+            this.playerUuid = playerUuid;
+            this.target = target;
+            this.chunkWaitNanos = chunkWaitNanos;
+            this.queuedNanos = queuedNanos;
+        }
+    }
+}
@@ -1,45 +1,69 @@
 package dev.bohush.quicktravel.util;
 
-import dev.bohush.quicktravel.mixin.MinecraftServerAccessor;
-import dev.bohush.quicktravel.mixin.WorldSaveHandlerAccessor;
-import net.minecraft.block.BedBlock;
-import net.minecraft.entity.player.PlayerEntity;
-import net.minecraft.nbt.NbtCompound;
-import net.minecraft.nbt.NbtElement;
-import net.minecraft.nbt.NbtIo;
-import net.minecraft.particle.ParticleTypes;
+import dev.bohush.quicktravel.jfr.EligibilityCheckEvent;
+import dev.bohush.quicktravel.jfr.PlayerFileReadEvent;
+import dev.bohush.quicktravel.jfr.TeleportEvent;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.world.ChunkTicketType;
 import net.minecraft.server.world.ServerWorld;
-import net.minecraft.sound.SoundCategory;
-import net.minecraft.sound.SoundEvents;
 import net.minecraft.text.LiteralText;
 import net.minecraft.text.Text;
+import net.minecraft.util.Identifier;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.GlobalPos;
 import net.minecraft.util.math.Vec3d;
+import net.minecraft.util.registry.Registry;
+import net.minecraft.util.registry.RegistryKey;
 import net.minecraft.world.World;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
-import java.util.HashSet;
 
 public class TeleportUtil {
     public static final Text ERROR_INVALID_DIMENSION = new LiteralText("This command can only be used in the overworld.");
-    public static final Text ERROR_TOO_FAR_AWAY = new LiteralText("You are too far away from a bed or world spawn.");
+    public static final Text ERROR_TOO_FAR_AWAY = new LiteralText("You are too far away from a bed, respawn anchor or world spawn.");
     public static final Text ERROR_NO_BED = new LiteralText("You have no home bed or it was obstructed.");
     public static final Text ERROR_TARGET_NO_BED = new LiteralText(" has no home bed or it was obstructed.");
+    public static final Text ERROR_HOME_OTHER_DIMENSION = new LiteralText("Your home is in another dimension.");
+    public static final Text ERROR_TARGET_HOME_OTHER_DIMENSION = new LiteralText(" has their home in another dimension.");
+    public static final Text ERROR_IN_PROGRESS = new LiteralText("Your previous teleport is still being processed.");
+
+    public static final int MAX_DISTANCE = 25;
+
+    private static final String[] DIRECTIONS = {
+        "north", "north-east", "east", "south-east", "south", "south-west", "west", "north-west"
+    };
 
     private static final Logger LOGGER = LogManager.getLogger();
 
+    // Filled by canTeleport on the server thread while the player has no tracked zone
+    private static final LongArrayList nearbyBuffer = new LongArrayList();
+
     public static void teleportPlayer(ServerWorld world, ServerPlayerEntity player, Vec3d target) {
+        teleportPlayer(world, player, target, 0, 0, true);
+    }
+
+    /**
+     * @param firstToDestination False if another player has already been teleported to the same destination in this tick,
+     * then the chunk ticket is shared with that teleport.
+     */
+    static void teleportPlayer(ServerWorld world, ServerPlayerEntity player, Vec3d target, long chunkWaitNanos, long queueWaitNanos, boolean firstToDestination) {
+        var event = new TeleportEvent();
+        event.begin();
+
+        var start = System.nanoTime();
         var from = player.getPos();
 
         // Load the chunk
-        var chunkPos = new ChunkPos(new BlockPos(target));
-        world.getChunkManager().addTicket(ChunkTicketType.POST_TELEPORT, chunkPos, 1, player.getId());
+        if (firstToDestination) {
+            var chunkPos = new ChunkPos(new BlockPos(target));
+            world.getChunkManager().addTicket(ChunkTicketType.POST_TELEPORT, chunkPos, 1, player.getId());
+        }
 
         player.stopRiding();
         if (player.isSleeping()) {
@@ -49,52 +73,255 @@ public class TeleportUtil {
         player.networkHandler.requestTeleport(target.getX(), target.getY(), target.getZ(), 0, 0);
         player.setVelocity(Vec3d.ZERO);
 
-        spawnParticles(world, from, target);
-        playSound(world, from, target);
+        TeleportEffects.addTeleport(world, from, target);
+
+        Metrics.TELEPORTS.increment();
+        Metrics.TELEPORT.recordSince(start);
+
+        if (event.shouldCommit()) {
+            event.player = player.getEntityName();
+            event.x = target.getX();
+            event.y = target.getY();
+            event.z = target.getZ();
+            event.chunkWait = chunkWaitNanos;
+            event.queueWait = queueWaitNanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * Teleports the player once the destination chunk is loaded, see {@link ChunkPrewarmer#whenLoaded},
+     * and it is the player's turn in {@link TeleportScheduler}.
+     * Nothing happens if the player leaves the world in the meantime.
+     */
+    public static void teleportPlayerWhenLoaded(ServerWorld world, ServerPlayerEntity player, Vec3d target) {
+        var playerUuid = player.getUuid();
+        var requested = System.nanoTime();
+        ChunkPrewarmer.whenLoaded(world, new BlockPos(target), () -> {
+            HotDestinations.recordTeleport(world, new BlockPos(target));
+            TeleportScheduler.schedule(world, playerUuid, target, System.nanoTime() - requested);
+        });
     }
 
+    /**
+     * Teleports the player to where one wakes up from the bed at the position, once its chunk is loaded,
+     * like {@link #teleportPlayerWhenLoaded}. The wake-up position depends on the blocks around the bed,
+     * so it is only looked up after the chunk is loaded instead of loading it on the server thread.
+     * @param angle Spawn angle of the bed's owner, decides which side of the bed is tried first.
+     * @param onNoBed Called instead if the bed is missing or obstructed.
+     */
+    public static void teleportToBedWhenLoaded(ServerWorld world, ServerPlayerEntity player, BlockPos bedPos, float angle, Runnable onNoBed) {
+        var playerUuid = player.getUuid();
+        var requested = System.nanoTime();
+        ChunkPrewarmer.whenLoaded(world, bedPos, () -> {
+            var target = WakeUpPositionCache.get(world, bedPos, angle);
+            if (target == null) {
+                onNoBed.run();
+                return;
+            }
+
+            HotDestinations.recordTeleport(world, new BlockPos(target));
+            TeleportScheduler.schedule(world, playerUuid, target, System.nanoTime() - requested);
+        });
+    }
+
+    /**
+     * Answers from loaded chunks only, spawn points in unloaded chunks count as no anchor.
+     * Commands go through {@link EligibilityCheck}, which reads those from the region files on its workers.
+     */
     public static boolean canTeleport(ServerWorld world, ServerPlayerEntity player) {
-        if (world.getRegistryKey() != World.OVERWORLD) {
-            return false;
+        var from = player.getPos();
+
+        // Check world spawn and spawn points of all players (online and offline) around the player
+        var candidates = AnchorZoneTracker.getCandidates(player);
+        if (candidates == null) {
+            nearbyBuffer.clear();
+            AnchorIndex.getNearby(world.getRegistryKey(), from, nearbyBuffer);
+            return canTeleport(world, from, nearbyBuffer, false, null);
         }
 
-        var from = player.getPos();
+        return canTeleport(world, from, candidates, AnchorZoneTracker.isInsideZone(player), null);
+    }
+
+    /**
+     * Same as {@link #canTeleport(ServerWorld, ServerPlayerEntity)}, but with packed spawn point positions
+     * already collected by {@link AnchorIndex} or {@link AnchorZoneTracker}. Candidates that are too far are skipped.
+     */
+    public static boolean canTeleport(ServerWorld world, Vec3d from, LongList nearbySpawnPoints) {
+        return canTeleport(world, from, nearbySpawnPoints, false, null);
+    }
 
-        // 1. Check world spawn and the player's bed
-        if (isNearby(from, world.getSpawnPos())) {
-            return true;
+    /**
+     * @param insideFirst Whether the first spawn point is within reach from anywhere around the position,
+     * see {@link AnchorZoneTracker#isInsideZone}. Then only its bed is checked if its chunk is loaded.
+     * @param unloadedSpawnPoints If not null, nearby spawn points in chunks that are not loaded are added to it.
+     * They are never read from the region file here, see {@link BedCache#getAnchorState},
+     * so false only means there is no anchor in the loaded chunks.
+     */
+    public static boolean canTeleport(ServerWorld world, Vec3d from, LongList nearbySpawnPoints, boolean insideFirst, @Nullable LongList unloadedSpawnPoints) {
+        // Created only while recording, so the check allocates nothing otherwise
+        var event = EligibilityCheckEvent.isRecording() ? new EligibilityCheckEvent() : null;
+        if (event != null) {
+            event.begin();
         }
 
-        if (isNearby(from, getBedPosition(world, player))) {
-            return true;
+        var nearSpawn = false;
+        var firstChecked = false;
+        var bedsChecked = 0;
+        var canTeleport = false;
+        var start = System.nanoTime();
+        try {
+            if (insideFirst) {
+                var state = BedCache.getAnchorState(world, nearbySpawnPoints.getLong(0));
+                if (state != BedCache.AnchorState.UNKNOWN) {
+                    firstChecked = true;
+                    bedsChecked++;
+                    if (state == BedCache.AnchorState.ANCHOR) {
+                        canTeleport = true;
+                        return true;
+                    }
+                }
+            }
+
+            if (isNearWorldSpawn(world, from)) {
+                nearSpawn = true;
+                canTeleport = true;
+                return true;
+            }
+
+            for (int i = firstChecked ? 1 : 0; i < nearbySpawnPoints.size(); i++) {
+                var spawnPos = nearbySpawnPoints.getLong(i);
+                if (!isNearby(from.getX(), from.getY(), from.getZ(), spawnPos)) {
+                    continue;
+                }
+
+                var state = BedCache.getAnchorState(world, spawnPos);
+                if (state == BedCache.AnchorState.UNKNOWN) {
+                    if (unloadedSpawnPoints != null) {
+                        unloadedSpawnPoints.add(spawnPos);
+                    }
+                    continue;
+                }
+
+                bedsChecked++;
+                if (state == BedCache.AnchorState.ANCHOR) {
+                    canTeleport = true;
+                    return true;
+                }
+            }
+
+            return false;
+        } finally {
+            Metrics.CAN_TELEPORT.recordSince(start);
+            if (event != null && event.shouldCommit()) {
+                event.players = 1;
+                event.candidates = nearbySpawnPoints.size();
+                event.nearSpawn = nearSpawn;
+                event.bedsChecked = bedsChecked;
+                event.canTeleport = canTeleport;
+                event.commit();
+            }
         }
+    }
 
-        // 2. Check beds of all online players
-        var checkedPlayers = new HashSet<String>();
-        checkedPlayers.add(player.getUuidAsString());
+    /**
+     * Same as {@link #canTeleport(ServerWorld, Vec3d, LongList)} for several positions in one pass over the spawn points.
+     * Every spawn point is checked for a bed at most once, and positions are no longer considered once they can teleport.
+     * @param nearbySpawnPoints Spawn points near any of the positions, without duplicates.
+     * @return Whether the position at the same index can teleport.
+     */
+    public static boolean[] canTeleportAll(ServerWorld world, Vec3d[] positions, LongList nearbySpawnPoints) {
+        return canTeleportAll(world, positions, nearbySpawnPoints, null);
+    }
 
-        for (var onlinePlayer : world.getPlayers()) {
-            if (checkedPlayers.contains(onlinePlayer.getUuidAsString())) {
-                continue;
+    /**
+     * @param unloadedSpawnPoints See {@link #canTeleport(ServerWorld, Vec3d, LongList, boolean, LongList)},
+     * the positions near them can be resolved later with {@link #resolveNearby}.
+     */
+    public static boolean[] canTeleportAll(ServerWorld world, Vec3d[] positions, LongList nearbySpawnPoints, @Nullable LongList unloadedSpawnPoints) {
+        var results = new boolean[positions.length];
+        var event = EligibilityCheckEvent.isRecording() ? new EligibilityCheckEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+
+        var nearSpawn = false;
+        var bedsChecked = 0;
+        var remaining = 0;
+        var start = System.nanoTime();
+        try {
+            for (int i = 0; i < positions.length; i++) {
+                if (isNearWorldSpawn(world, positions[i])) {
+                    nearSpawn = true;
+                    results[i] = true;
+                } else {
+                    remaining++;
+                }
             }
-            checkedPlayers.add(onlinePlayer.getUuidAsString());
 
-            if (isNearby(from, getBedPosition(world, onlinePlayer))) {
-                return true;
+            for (int i = 0; i < nearbySpawnPoints.size() && remaining > 0; i++) {
+                var spawnPos = nearbySpawnPoints.getLong(i);
+                if (!isNearbyAny(positions, results, spawnPos)) {
+                    continue;
+                }
+
+                var state = BedCache.getAnchorState(world, spawnPos);
+                if (state == BedCache.AnchorState.UNKNOWN) {
+                    if (unloadedSpawnPoints != null) {
+                        unloadedSpawnPoints.add(spawnPos);
+                    }
+                    continue;
+                }
+
+                bedsChecked++;
+                if (state == BedCache.AnchorState.ANCHOR) {
+                    remaining -= resolveNearby(positions, results, spawnPos);
+                }
+            }
+
+            return results;
+        } finally {
+            Metrics.CAN_TELEPORT.recordSince(start);
+            if (event != null && event.shouldCommit()) {
+                event.players = positions.length;
+                event.candidates = nearbySpawnPoints.size();
+                event.nearSpawn = nearSpawn;
+                event.bedsChecked = bedsChecked;
+                event.canTeleport = remaining == 0;
+                event.commit();
             }
         }
+    }
 
-        // 3. Check beds of all offline players
-        var saveHandler = ((MinecraftServerAccessor)world.getServer()).getSaveHandler();
-        var playerDataDir = ((WorldSaveHandlerAccessor)saveHandler).getPlayerDataDir();
+    /**
+     * Marks the positions near any of the anchors as able to teleport.
+     */
+    public static void resolveNearby(Vec3d[] positions, boolean[] results, LongList anchors) {
+        for (int i = 0; i < anchors.size(); i++) {
+            resolveNearby(positions, results, anchors.getLong(i));
+        }
+    }
 
-        for (var savedPlayerUuid : saveHandler.getSavedPlayerIds()) {
-            if (checkedPlayers.contains(savedPlayerUuid)) {
-                continue;
+    /**
+     * @return How many positions were newly marked.
+     */
+    private static int resolveNearby(Vec3d[] positions, boolean[] results, long anchorPos) {
+        var resolved = 0;
+        for (int i = 0; i < positions.length; i++) {
+            var from = positions[i];
+            if (!results[i] && isNearby(from.getX(), from.getY(), from.getZ(), anchorPos)) {
+                results[i] = true;
+                resolved++;
             }
-            checkedPlayers.add(savedPlayerUuid);
+        }
 
-            if (isNearby(from, getBedPositionFromSavedPlayer(world, savedPlayerUuid, playerDataDir))) {
+        return resolved;
+    }
+
+    private static boolean isNearbyAny(Vec3d[] positions, boolean[] resolved, long targetPos) {
+        for (int i = 0; i < positions.length; i++) {
+            var from = positions[i];
+            if (!resolved[i] && isNearby(from.getX(), from.getY(), from.getZ(), targetPos)) {
                 return true;
             }
         }
@@ -106,95 +333,176 @@ public class TeleportUtil {
         if (targetPos == null) {
             return false;
         }
-        return targetPos.isWithinDistance(playerPos, 25);
+        return targetPos.isWithinDistance(playerPos, MAX_DISTANCE);
     }
 
-    @Nullable
-    public static Vec3d getBedWakeUpPosition(ServerWorld world, ServerPlayerEntity player) {
-        var spawnPos = player.getSpawnPointPosition();
-        if (spawnPos == null) {
-            return null;
-        }
+    /**
+     * Same as {@link #isNearby(Vec3d, BlockPos)} for a position packed by {@link BlockPos#asLong()}.
+     */
+    public static boolean isNearby(double x, double y, double z, long targetPos) {
+        var dx = BlockPos.unpackLongX(targetPos) + 0.5 - x;
+        var dy = BlockPos.unpackLongY(targetPos) + 0.5 - y;
+        var dz = BlockPos.unpackLongZ(targetPos) + 0.5 - z;
+        return dx * dx + dy * dy + dz * dz < MAX_DISTANCE * MAX_DISTANCE;
+    }
 
-        return PlayerEntity.findRespawnPosition(world, spawnPos, player.getSpawnAngle(), false, true)
-            .orElse(null);
+    /**
+     * Squared distance from the player position to the center of the block, as used by {@link #isNearby}.
+     */
+    public static double getSquaredDistance(Vec3d playerPos, long targetPos) {
+        var dx = BlockPos.unpackLongX(targetPos) + 0.5 - playerPos.getX();
+        var dy = BlockPos.unpackLongY(targetPos) + 0.5 - playerPos.getY();
+        var dz = BlockPos.unpackLongZ(targetPos) + 0.5 - playerPos.getZ();
+        return dx * dx + dy * dy + dz * dz;
     }
 
+    /**
+     * World spawn, which only counts as a place to teleport from in the overworld.
+     */
     @Nullable
-    public static BlockPos getBedPosition(ServerWorld world, ServerPlayerEntity player) {
-        var spawnPos = player.getSpawnPointPosition();
-        if (spawnPos == null) {
-            return null;
-        }
+    public static BlockPos getWorldSpawn(ServerWorld world) {
+        return world.getRegistryKey() == World.OVERWORLD ? world.getSpawnPos() : null;
+    }
 
-        var chunkPos = new ChunkPos(spawnPos);
-        if (world.isChunkLoaded(chunkPos.toLong()) && world.getBlockState(spawnPos).getBlock() instanceof BedBlock) {
-            return spawnPos;
+    /**
+     * Same as {@link #isNearby(Vec3d, BlockPos)} with {@link #getWorldSpawn}, but reads the spawn coordinates
+     * from the world properties instead of allocating a position.
+     */
+    public static boolean isNearWorldSpawn(ServerWorld world, Vec3d from) {
+        if (world.getRegistryKey() != World.OVERWORLD) {
+            return false;
         }
 
-        return null;
+        var properties = world.getLevelProperties();
+        var spawnPos = BlockPos.asLong(properties.getSpawnX(), properties.getSpawnY(), properties.getSpawnZ());
+        return isNearby(from.getX(), from.getY(), from.getZ(), spawnPos);
     }
 
+    /**
+     * Finds the closest place the player can teleport from, the world spawn or any indexed spawn point, see {@link AnchorIndex#findNearest}.
+     * Spawn points in loaded chunks must still have their bed, ones in unloaded chunks are assumed to,
+     * so the search never reads region files.
+     * @return Null if there is none in the world.
+     */
     @Nullable
-    private static BlockPos getBedPositionFromSavedPlayer(ServerWorld world, String playerUuid, File playerDataDir) {
-        NbtCompound nbt = null;
-        try {
-            var file = new File(playerDataDir, playerUuid + ".dat");
-            if (file.exists() && file.isFile()) {
-                nbt = NbtIo.readCompressed(file);
-            }
-        } catch (Exception e) {
-            LOGGER.warn("Failed to load player data for {}", playerUuid);
-            return null;
+    public static BlockPos findNearestAnchor(ServerWorld world, Vec3d from) {
+        var worldSpawnPos = getWorldSpawn(world);
+        var anchorPos = AnchorIndex.findNearest(world.getRegistryKey(), from, pos -> BedCache.getAnchorState(world, pos) != BedCache.AnchorState.NO_ANCHOR);
+        if (anchorPos == null || (worldSpawnPos != null && getSquaredDistance(from, worldSpawnPos.asLong()) <= getSquaredDistance(from, anchorPos.asLong()))) {
+            return worldSpawnPos;
         }
 
-        if (nbt == null
-            || !nbt.contains("SpawnX", NbtElement.NUMBER_TYPE)
-            || !nbt.contains("SpawnY", NbtElement.NUMBER_TYPE)
-            || !nbt.contains("SpawnZ", NbtElement.NUMBER_TYPE)) {
-            return null;
+        return anchorPos;
+    }
+
+    /**
+     * Describes a position returned by {@link #findNearestAnchor}. The world spawn and the player's own spawn point
+     * come with the direction, e.g. "Your spawn point is 40 blocks to the north". Spawn points of other players
+     * only come with the distance, so the hint cannot be used to locate them.
+     */
+    public static String describeAnchor(ServerWorld world, ServerPlayerEntity player, BlockPos pos) {
+        var from = player.getPos();
+        if (pos.equals(getWorldSpawn(world))) {
+            return "World spawn is " + describeDirection(from, pos);
+        }
+        if (player.getSpawnPointDimension() == world.getRegistryKey() && pos.equals(player.getSpawnPointPosition())) {
+            return "Your spawn point is " + describeDirection(from, pos);
         }
 
-        var spawnPos = new BlockPos(nbt.getInt("SpawnX"), nbt.getInt("SpawnY"), nbt.getInt("SpawnZ"));
-        var chunkPos = new ChunkPos(spawnPos);
+        var name = world.getDimension().isBedWorking() ? "bed" : "respawn anchor";
+        return "Another player's " + name + " is " + describeDistance(from, pos) + " away";
+    }
 
-        if (world.isChunkLoaded(chunkPos.toLong()) && world.getBlockState(spawnPos).getBlock() instanceof BedBlock) {
-            return spawnPos;
+    /**
+     * Distance from the player to the position, e.g. "40 blocks".
+     */
+    public static String describeDistance(Vec3d from, BlockPos pos) {
+        var distance = (int)Math.ceil(Math.sqrt(getSquaredDistance(from, pos.asLong())));
+        return distance + (distance == 1 ? " block" : " blocks");
+    }
+
+    /**
+     * Distance and compass direction from the player to the position, e.g. "40 blocks to the north-east".
+     * Coordinates are left out, the direction is all the player needs.
+     */
+    public static String describeDirection(Vec3d from, BlockPos pos) {
+        var dx = pos.getX() + 0.5 - from.getX();
+        var dz = pos.getZ() + 0.5 - from.getZ();
+        if (dx * dx + dz * dz < 1) {
+            return describeDistance(from, pos) + (pos.getY() + 0.5 > from.getY() ? " above you" : " below you");
         }
 
-        return null;
+        // North is -Z and east is +X, 0 degrees points north and the angle grows clockwise
+        var angle = Math.toDegrees(Math.atan2(dx, -dz));
+        var index = Math.floorMod((int)Math.round(angle / 45), DIRECTIONS.length);
+        return describeDistance(from, pos) + " to the " + DIRECTIONS[index];
     }
 
     /**
-     * Spawns teleportation particles.
-     * @param origin Where the player is teleporting <b>from</b>.
-     * @param target Where the player is teleporting <b>to</b>.
+     * {@link #ERROR_TOO_FAR_AWAY} followed by how far the nearest place to teleport from is, see {@link #describeAnchor}.
      */
-    public static void spawnParticles(ServerWorld world, Vec3d origin, Vec3d target) {
-        world.spawnParticles(ParticleTypes.POOF, origin.getX(), origin.getY() + 1, origin.getZ(), 32, 0, 0.5, 0, 0.2);
-        world.spawnParticles(ParticleTypes.PORTAL, target.getX(), target.getY() + 1, target.getZ(), 32, 0, 0.5, 0, 1);
+    public static Text getTooFarAwayError(ServerWorld world, ServerPlayerEntity player) {
+        var nearest = findNearestAnchor(world, player.getPos());
+        if (nearest == null) {
+            return ERROR_TOO_FAR_AWAY;
+        }
+
+        return new LiteralText(ERROR_TOO_FAR_AWAY.getString() + " " + describeAnchor(world, player, nearest) + ".");
     }
 
     /**
-     * Plays teleportation sound.
-     * @param origin Where the player is teleporting <b>from</b>.
-     * @param target Where the player is teleporting <b>to</b>.
+     * Whether there is a bed, or a respawn anchor in the Nether, at the position.
+     * False if its chunk is not loaded, see {@link BedCache#getAnchorState}.
      */
-    public static void playSound(ServerWorld world, Vec3d origin, Vec3d target) {
-        playSound(world, origin);
-        playSound(world, target);
+    public static boolean isAnchor(ServerWorld world, BlockPos pos) {
+        return BedCache.isAnchor(world, pos);
+    }
+
+    public static boolean isAnchor(ServerWorld world, long packedPos) {
+        return BedCache.isAnchor(world, packedPos);
     }
 
-    public static void playSound(ServerWorld world, Vec3d target) {
-        world.playSound(
-            null,
-            target.getX(),
-            target.getY(),
-            target.getZ(),
-            SoundEvents.ENTITY_ENDERMAN_TELEPORT,
-            SoundCategory.PLAYERS,
-            1,
-            1
-        );
+    /**
+     * Reads the spawn point of an offline player from their player data file.
+     * @return Spawn point, or null if the player has none.
+     */
+    @Nullable
+    public static GlobalPos getSpawnPointFromSavedPlayer(String playerUuid, File playerDataDir) {
+        SpawnNbtReader nbt = null;
+        try {
+            var file = new File(playerDataDir, playerUuid + ".dat");
+            if (file.exists() && file.isFile()) {
+                var event = new PlayerFileReadEvent();
+                event.begin();
+
+                nbt = SpawnNbtReader.read(file);
+                Metrics.OFFLINE_FILES_READ.increment();
+
+                if (event.shouldCommit()) {
+                    event.player = playerUuid;
+                    event.bytes = file.length();
+                    event.commit();
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Failed to load player data for {}", playerUuid);
+            return null;
+        }
+
+        if (nbt == null || !nbt.hasSpawnPosition()) {
+            return null;
+        }
+
+        // Players without a spawn dimension are from before it was saved, when spawn points were always in the overworld
+        var dimension = World.OVERWORLD;
+        if (nbt.getSpawnDimension() != null) {
+            var id = Identifier.tryParse(nbt.getSpawnDimension());
+            if (id == null) {
+                return null;
+            }
+            dimension = RegistryKey.of(Registry.WORLD_KEY, id);
+        }
+
+        return GlobalPos.create(dimension, nbt.getSpawnPosition());
     }
 }
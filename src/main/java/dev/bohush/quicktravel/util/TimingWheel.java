@@ -0,0 +1,106 @@
+package dev.bohush.quicktravel.util;
+
+import java.util.ArrayList;
+
+/**
+ * Hashed timing wheel driven by server ticks.
+ * <p>
+ * Scheduling and cancelling a task is O(1), tasks run on whichever thread calls {@link #advance()}.
+ */
+public class TimingWheel {
+    private final Timeout[] buckets;
+    private final int mask;
+    private final ArrayList<Timeout> expired = new ArrayList<>();
+    private long tick;
+
+    /**
+     * @param size Number of buckets, rounded up to a power of two.
+     */
+    public TimingWheel(int size) {
+        var bucketCount = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        buckets = new Timeout[bucketCount];
+        mask = bucketCount - 1;
+
+        for (int i = 0; i < bucketCount; i++) {
+            // Sentinel
+            var head = new Timeout(null);
+            head.prev = head;
+            head.next = head;
+            buckets[i] = head;
+        }
+    }
+
+    /**
+     * Schedules a task to run after the given number of ticks (at least one).
+     */
+    public Timeout schedule(long delayTicks, Runnable task) {
+        delayTicks = Math.max(1, delayTicks);
+
+        var timeout = new Timeout(task);
+        timeout.rounds = (delayTicks - 1) / buckets.length;
+
+        // Insert at the front, so a bucket that is currently being processed does not see it
+        var head = buckets[(int)((tick + delayTicks) & mask)];
+        timeout.prev = head;
+        timeout.next = head.next;
+        head.next.prev = timeout;
+        head.next = timeout;
+
+        return timeout;
+    }
+
+    /**
+     * Moves the wheel by one tick and runs all tasks that are due.
+     */
+    public void advance() {
+        tick++;
+
+        var head = buckets[(int)(tick & mask)];
+        for (var timeout = head.next; timeout != head; ) {
+            var next = timeout.next;
+            if (timeout.rounds == 0) {
+                timeout.unlink();
+                expired.add(timeout);
+            } else {
+                timeout.rounds--;
+            }
+            timeout = next;
+        }
+
+        // Tasks may schedule or cancel other tasks, so they only run once the bucket is no longer traversed
+        try {
+            for (var timeout : expired) {
+                timeout.task.run();
+            }
+        } finally {
+            expired.clear();
+        }
+    }
+
+    public static class Timeout {
+        private final Runnable task;
+        private Timeout prev;
+        private Timeout next;
+        private long rounds;
+
+        private Timeout(Runnable task) {
+            this.task = task;
+        }
+
+        /**
+         * Prevents the task from running. Does nothing if it has already run or was cancelled.
+         */
+        public void cancel() {
+            if (next != null) {
+                unlink();
+            }
+        }
+
+        private void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = null;
+            next = null;
+        }
+    }
+}
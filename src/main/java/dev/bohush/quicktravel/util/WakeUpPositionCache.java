@@ -0,0 +1,144 @@
+package dev.bohush.quicktravel.util;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.World;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Remembers where a player wakes up from a bed in the overworld, as computed by {@link PlayerEntity#findRespawnPosition}.
+ * <p>
+ * The wake-up position only depends on the blocks around the bed, so an entry is dropped when a block within
+ * {@link #RADIUS} of the bed changes or a chunk it covers is loaded or unloaded.
+ * Entries are indexed by every chunk section their neighbourhood touches to find them on block changes.
+ * Must only be used from the server thread.
+ */
+public class WakeUpPositionCache {
+    /**
+     * Covers the other half of the bed and every spot the wake-up search probes around both halves.
+     */
+    private static final int RADIUS = 3;
+
+    private static final Long2ObjectOpenHashMap<Entry> entries = new Long2ObjectOpenHashMap<>();
+    private static final Long2ObjectOpenHashMap<LongOpenHashSet> sections = new Long2ObjectOpenHashMap<>();
+
+    @Nullable
+    public static Vec3d get(ServerWorld world, BlockPos pos, float angle) {
+        if (world.getRegistryKey() != World.OVERWORLD) {
+            return find(world, pos, angle);
+        }
+
+        var key = pos.asLong();
+        var entry = entries.get(key);
+        if (entry != null && entry.angle == angle) {
+            return entry.position;
+        }
+
+        // The angle decides which side of the bed is tried first, players sharing a bed may have different ones
+        var position = find(world, pos, angle);
+        if (entry == null) {
+            forEachSection(pos, sectionKey -> sections.computeIfAbsent(sectionKey, k -> new LongOpenHashSet()).add(key));
+        }
+        entries.put(key, new Entry(angle, position));
+
+        return position;
+    }
+
+    public static void onBlockChanged(World world, BlockPos pos) {
+        if (sections.isEmpty() || world.getRegistryKey() != World.OVERWORLD) {
+            return;
+        }
+
+        var beds = sections.get(ChunkSectionPos.asLong(pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4));
+        if (beds == null) {
+            return;
+        }
+
+        var affected = new LongArrayList();
+        for (var iterator = beds.iterator(); iterator.hasNext(); ) {
+            var key = iterator.nextLong();
+            if (Math.abs(BlockPos.unpackLongX(key) - pos.getX()) <= RADIUS
+                && Math.abs(BlockPos.unpackLongY(key) - pos.getY()) <= RADIUS
+                && Math.abs(BlockPos.unpackLongZ(key) - pos.getZ()) <= RADIUS) {
+                affected.add(key);
+            }
+        }
+
+        for (var i = 0; i < affected.size(); i++) {
+            remove(affected.getLong(i));
+        }
+    }
+
+    public static void onChunkChanged(ServerWorld world, ChunkPos chunkPos) {
+        if (sections.isEmpty() || world.getRegistryKey() != World.OVERWORLD) {
+            return;
+        }
+
+        var affected = new LongArrayList();
+        for (var y = world.getBottomSectionCoord(); y < world.getTopSectionCoord(); y++) {
+            var beds = sections.get(ChunkSectionPos.asLong(chunkPos.x, y, chunkPos.z));
+            if (beds != null) {
+                affected.addAll(beds);
+            }
+        }
+
+        for (var i = 0; i < affected.size(); i++) {
+            remove(affected.getLong(i));
+        }
+    }
+
+    public static void clear() {
+        entries.clear();
+        sections.clear();
+    }
+
+    @Nullable
+    private static Vec3d find(ServerWorld world, BlockPos pos, float angle) {
+        return PlayerEntity.findRespawnPosition(world, pos, angle, false, true).orElse(null);
+    }
+
+    private static void remove(long key) {
+        if (entries.remove(key) == null) {
+            return;
+        }
+
+        forEachSection(BlockPos.fromLong(key), sectionKey -> {
+            var beds = sections.get(sectionKey);
+            if (beds != null && beds.remove(key) && beds.isEmpty()) {
+                sections.remove(sectionKey);
+            }
+        });
+    }
+
+    private static void forEachSection(BlockPos pos, SectionConsumer consumer) {
+        for (var x = (pos.getX() - RADIUS) >> 4; x <= (pos.getX() + RADIUS) >> 4; x++) {
+            for (var y = (pos.getY() - RADIUS) >> 4; y <= (pos.getY() + RADIUS) >> 4; y++) {
+                for (var z = (pos.getZ() - RADIUS) >> 4; z <= (pos.getZ() + RADIUS) >> 4; z++) {
+                    consumer.accept(ChunkSectionPos.asLong(x, y, z));
+                }
+            }
+        }
+    }
+
+    private interface SectionConsumer {
+        void accept(long sectionKey);
+    }
+
+    private static class Entry {
+        private final float angle;
+        @Nullable
+        private final Vec3d position;
+
+        private Entry(float angle, @Nullable Vec3d position) {
+            this.angle = angle;
+            this.position = position;
+        }
+    }
+}